@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.benchmarks;
+
+import eu.interedition.collatex.CollationAlgorithm;
+import eu.interedition.collatex.CollationAlgorithmFactory;
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.matching.EqualityTokenComparator;
+import eu.interedition.collatex.needlemanwunsch.NeedlemanWunschAlgorithm;
+import eu.interedition.collatex.simple.SimpleToken;
+import eu.interedition.collatex.util.CompactVariantGraphStorage;
+
+/**
+ * Names of the benchmarked collation algorithms and variant graph storages, as used in the <code>algorithm</code> and
+ * <code>storage</code> benchmark parameters.
+ */
+public class Algorithms {
+
+    public static final String DEKKER = "dekker";
+    public static final String MEDITE = "medite";
+    public static final String NEEDLEMAN_WUNSCH = "needleman-wunsch";
+    public static final String NEEDLEMAN_WUNSCH_LINEAR_SPACE = "needleman-wunsch-linear-space";
+    public static final String NEEDLEMAN_WUNSCH_BANDED = "needleman-wunsch-banded";
+    public static final String GREEDY_STRING_TILING = "gst";
+
+    public static final String HASH_STORAGE = "hash";
+    public static final String COMPACT_STORAGE = "compact";
+
+    // minimum tile length of the greedy string tiling algorithm, as configured in the collation tools
+    private static final int MINIMUM_TILE_LENGTH = 2;
+
+    public static CollationAlgorithm create(String name) {
+        switch (name) {
+            case DEKKER:
+                return CollationAlgorithmFactory.dekker(new EqualityTokenComparator());
+            case MEDITE:
+                return CollationAlgorithmFactory.medite(new EqualityTokenComparator(), SimpleToken.TOKEN_MATCH_EVALUATOR);
+            case NEEDLEMAN_WUNSCH:
+                return CollationAlgorithmFactory.needlemanWunsch(new EqualityTokenComparator());
+            case NEEDLEMAN_WUNSCH_LINEAR_SPACE:
+                return CollationAlgorithmFactory.needlemanWunsch(new EqualityTokenComparator(), NeedlemanWunschAlgorithm.Mode.LINEAR_SPACE);
+            case NEEDLEMAN_WUNSCH_BANDED:
+                return CollationAlgorithmFactory.needlemanWunsch(new EqualityTokenComparator(), NeedlemanWunschAlgorithm.Mode.BANDED);
+            case GREEDY_STRING_TILING:
+                return CollationAlgorithmFactory.greedyStringTiling(new EqualityTokenComparator(), MINIMUM_TILE_LENGTH);
+            default:
+                throw new IllegalArgumentException("Unknown collation algorithm: " + name);
+        }
+    }
+
+    public static VariantGraph graph(String storage) {
+        switch (storage) {
+            case HASH_STORAGE:
+                return new VariantGraph();
+            case COMPACT_STORAGE:
+                return new VariantGraph(new CompactVariantGraphStorage());
+            default:
+                throw new IllegalArgumentException("Unknown variant graph storage: " + storage);
+        }
+    }
+}
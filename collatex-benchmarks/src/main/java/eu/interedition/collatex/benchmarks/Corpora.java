@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.benchmarks;
+
+import eu.interedition.collatex.simple.SimpleTokenNormalizers;
+import eu.interedition.collatex.simple.SimpleWitness;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Witness sets the benchmarks collate.
+ * <p>
+ * The fixtures are the Darwin, Beckett and Hermans texts from the core test suite, one witness per line. Synthetic
+ * corpora derive every witness from a common base text by random substitutions, omissions, additions and
+ * transpositions, so that alignments remain realistic while witness count and length scale freely.
+ */
+public class Corpora {
+
+    public static final List<String> FIXTURES = Collections.unmodifiableList(Arrays.asList("darwin", "beckett", "hermans"));
+
+    private static final char[] SIGLA = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    // probability per token of an edit when deriving a witness from the base text
+    private static final double EDIT_RATE = 0.05;
+
+    private static final int VOCABULARY_SIZE = 5000;
+
+    private static final String SYNTHETIC_PREFIX = "synthetic-";
+    private static final long SYNTHETIC_SEED = 42;
+
+    /**
+     * Resolves a fixture name or a synthetic corpus specification like <code>synthetic-10x5000</code>, i.e. 10 witnesses
+     * derived from a base text of 5000 tokens.
+     */
+    public static List<SimpleWitness> named(String name) {
+        if (name.startsWith(SYNTHETIC_PREFIX)) {
+            final String[] dimensions = name.substring(SYNTHETIC_PREFIX.length()).split("x");
+            if (dimensions.length != 2) {
+                throw new IllegalArgumentException("Invalid synthetic corpus specification: " + name);
+            }
+            return synthetic(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), SYNTHETIC_SEED);
+        }
+        return fixture(name);
+    }
+
+    public static List<SimpleWitness> fixture(String name) {
+        final InputStream stream = Corpora.class.getResourceAsStream(name + ".txt");
+        if (stream == null) {
+            throw new IllegalArgumentException("Unknown fixture: " + name);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            final List<String> contents = reader.lines().filter(line -> !line.trim().isEmpty()).collect(Collectors.toList());
+            final List<SimpleWitness> witnesses = new ArrayList<>(contents.size());
+            for (String content : contents) {
+                witnesses.add(new SimpleWitness(sigil(witnesses.size()), content));
+            }
+            return witnesses;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static List<SimpleWitness> synthetic(int witnessCount, int length, long seed) {
+        final Random random = new Random(seed);
+
+        final String[] base = new String[length];
+        for (int tc = 0; tc < length; tc++) {
+            base[tc] = word(random);
+        }
+
+        final List<SimpleWitness> witnesses = new ArrayList<>(witnessCount);
+        for (int wc = 0; wc < witnessCount; wc++) {
+            final List<String> tokens = derive(base, random);
+            final SimpleWitness witness = new SimpleWitness(sigil(wc));
+            witness.setTokenContents(tokens.stream(), SimpleTokenNormalizers.LC_TRIM_WS);
+            witnesses.add(witness);
+        }
+        return witnesses;
+    }
+
+    public static int tokenCount(List<SimpleWitness> witnesses) {
+        return witnesses.stream().mapToInt(w -> w.getTokens().size()).sum();
+    }
+
+    private static List<String> derive(String[] base, Random random) {
+        final List<String> tokens = new ArrayList<>(base.length + (base.length / 10));
+        for (int tc = 0; tc < base.length; tc++) {
+            if (random.nextDouble() >= EDIT_RATE) {
+                tokens.add(base[tc]);
+                continue;
+            }
+            switch (random.nextInt(4)) {
+                case 0: // substitution
+                    tokens.add(word(random));
+                    break;
+                case 1: // omission
+                    break;
+                case 2: // addition
+                    tokens.add(base[tc]);
+                    tokens.add(word(random));
+                    break;
+                default: // transposition with the following token
+                    if (tc + 1 < base.length) {
+                        tokens.add(base[tc + 1]);
+                        tokens.add(base[tc]);
+                        tc++;
+                    } else {
+                        tokens.add(base[tc]);
+                    }
+            }
+        }
+        if (tokens.isEmpty()) {
+            tokens.add(word(random));
+        }
+        return tokens;
+    }
+
+    /**
+     * Draws from a skewed distribution, so a few words recur frequently as in natural language text.
+     */
+    private static String word(Random random) {
+        final double skew = random.nextDouble();
+        return "w" + (int) (skew * skew * skew * VOCABULARY_SIZE) + " ";
+    }
+
+    private static String sigil(int index) {
+        return (index < SIGLA.length ? Character.toString(SIGLA[index]) : "W" + (index + 1));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.benchmarks;
+
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.simple.SimpleWitness;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collates the Darwin, Beckett and Hermans fixtures of the test suite with every collation algorithm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixtureCollationBenchmark {
+
+    @Param({"darwin", "beckett", "hermans"})
+    public String corpus;
+
+    @Param({Algorithms.DEKKER, Algorithms.MEDITE, Algorithms.NEEDLEMAN_WUNSCH, Algorithms.NEEDLEMAN_WUNSCH_LINEAR_SPACE, Algorithms.NEEDLEMAN_WUNSCH_BANDED, Algorithms.GREEDY_STRING_TILING})
+    public String algorithm;
+
+    @Param({Algorithms.HASH_STORAGE, Algorithms.COMPACT_STORAGE})
+    public String storage;
+
+    private List<SimpleWitness> witnesses;
+    private int tokenCount;
+
+    @Setup(Level.Trial)
+    public void loadCorpus() {
+        witnesses = Corpora.fixture(corpus);
+        tokenCount = Corpora.tokenCount(witnesses);
+    }
+
+    @Benchmark
+    public VariantGraph collate(TokenThroughput throughput) {
+        final VariantGraph graph = Algorithms.graph(storage);
+        Algorithms.create(algorithm).collate(graph, witnesses);
+        throughput.tokens += tokenCount;
+        return graph;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.benchmarks;
+
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.matching.EqualityTokenComparator;
+import eu.interedition.collatex.medite.Matches;
+import eu.interedition.collatex.medite.MeditePhases;
+import eu.interedition.collatex.simple.SimpleToken;
+import eu.interedition.collatex.simple.SimpleWitness;
+import eu.interedition.collatex.util.VertexMatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the phases of MEDITE in isolation, for the alignment of the second witness against a graph containing the
+ * first one.
+ * <p>
+ * The phases are run via {@link MeditePhases}, as they are not public. The maximal unique matches are those of the
+ * first round of the algorithm; the synthetic corpora yield hundreds to thousands of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class MeditePhaseBenchmark {
+
+    @Param({"darwin", "synthetic-2x1000", "synthetic-2x3000"})
+    public String corpus;
+
+    private MeditePhases phases;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        final List<SimpleWitness> witnesses = Corpora.named(corpus);
+
+        final VariantGraph graph = new VariantGraph();
+        Algorithms.create(Algorithms.MEDITE).collate(graph, witnesses.get(0));
+
+        phases = new MeditePhases(graph, witnesses.get(1), new EqualityTokenComparator(), SimpleToken.TOKEN_MATCH_EVALUATOR);
+    }
+
+    @Benchmark
+    public Object suffixTree() {
+        return phases.suffixTree();
+    }
+
+    @Benchmark
+    public Matches matching() {
+        return phases.matches();
+    }
+
+    @Benchmark
+    public SortedSet<SortedSet<VertexMatch.WithTokenIndex>> maximalUniqueMatches() {
+        return phases.maximalUniqueMatches();
+    }
+
+    @Benchmark
+    public SortedSet<SortedSet<VertexMatch.WithTokenIndex>> decision() {
+        return phases.decision();
+    }
+}
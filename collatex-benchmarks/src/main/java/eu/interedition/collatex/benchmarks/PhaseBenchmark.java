@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.benchmarks;
+
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.dekker.DekkerAlgorithm;
+import eu.interedition.collatex.dekker.Match;
+import eu.interedition.collatex.dekker.PhraseMatchDetector;
+import eu.interedition.collatex.dekker.TranspositionDetector;
+import eu.interedition.collatex.dekker.island.Coordinate;
+import eu.interedition.collatex.dekker.island.Island;
+import eu.interedition.collatex.dekker.island.IslandCollection;
+import eu.interedition.collatex.dekker.island.IslandConflictResolver;
+import eu.interedition.collatex.dekker.island.IslandSelection;
+import eu.interedition.collatex.dekker.token_index.TokenIndex;
+import eu.interedition.collatex.dekker.token_index.TokenIndexToMatches;
+import eu.interedition.collatex.matching.EqualityTokenComparator;
+import eu.interedition.collatex.simple.SimpleVariantGraphSerializer;
+import eu.interedition.collatex.simple.SimpleWitness;
+import eu.interedition.collatex.util.VariantGraphRanking;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the phases of a collation in isolation.
+ * <p>
+ * The phases of the Dekker algorithm are measured for the alignment of the second witness against a graph containing
+ * the first one, based on a token index of all witnesses. The graph phases (ranking, traversal, joining and
+ * serialization) are measured on the variant graph of all witnesses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhaseBenchmark {
+
+    @Param({"darwin", "beckett", "hermans", "synthetic-10x10000"})
+    public String corpus;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private final Comparator<Token> comparator = new EqualityTokenComparator();
+
+    private List<SimpleWitness> witnesses;
+    private SimpleWitness witness;
+
+    private TokenIndex tokenIndex;
+    private VariantGraph graph;
+    private VariantGraph.Vertex[] vertexArray;
+    private Set<Island> islands;
+    private Map<Token, VariantGraph.Vertex> alignments;
+    private List<List<Match>> phraseMatches;
+
+    private VariantGraph collated;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        witnesses = Corpora.named(corpus);
+        witness = witnesses.get(1);
+
+        tokenIndex = tokenIndex();
+
+        graph = new VariantGraph();
+        vertexArray = new FirstWitnessMerge().merge(graph, tokenIndex, witnesses.get(0));
+        islands = matching();
+
+        alignments = new HashMap<>();
+        for (Island island : alignment().getIslands()) {
+            for (Coordinate c : island) {
+                alignments.put(c.match.token, c.match.vertex);
+            }
+        }
+        phraseMatches = phraseDetection();
+
+        collated = collateAll(witnesses);
+    }
+
+    @Benchmark
+    public TokenIndex tokenIndex() {
+        final TokenIndex tokenIndex = new TokenIndex(comparator, witnesses);
+        tokenIndex.setParallelism(parallelism);
+        tokenIndex.prepare();
+        return tokenIndex;
+    }
+
+    @Benchmark
+    public Set<Island> matching() {
+        return TokenIndexToMatches.createMatches(tokenIndex, vertexArray, graph, witness);
+    }
+
+    @Benchmark
+    public IslandSelection alignment() {
+        return new IslandConflictResolver(new IslandCollection(islands)).createNonConflictingVersion();
+    }
+
+    @Benchmark
+    public List<List<Match>> phraseDetection() {
+        return new PhraseMatchDetector().detect(alignments, graph, witness);
+    }
+
+    @Benchmark
+    public List<List<Match>> transpositionDetection() {
+        return new TranspositionDetector().detect(phraseMatches, graph);
+    }
+
+    @Benchmark
+    public VariantGraphRanking ranking() {
+        return VariantGraphRanking.of(collated);
+    }
+
+    @Benchmark
+    public void traversal(Blackhole blackhole) {
+        for (VariantGraph.Vertex vertex : collated.vertices()) {
+            blackhole.consume(vertex);
+        }
+    }
+
+    @Benchmark
+    public String serialization() {
+        final StringWriter writer = new StringWriter();
+        new SimpleVariantGraphSerializer(collated).toDot(writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public VariantGraph join(JoinInput input) {
+        return VariantGraph.JOIN.apply(input.graph);
+    }
+
+    /**
+     * Joining modifies the graph, so each invocation needs a freshly collated one.
+     */
+    @State(Scope.Thread)
+    public static class JoinInput {
+
+        VariantGraph graph;
+
+        @Setup(Level.Invocation)
+        public void collate(PhaseBenchmark benchmark) {
+            graph = collateAll(benchmark.witnesses);
+        }
+    }
+
+    static VariantGraph collateAll(List<SimpleWitness> witnesses) {
+        final VariantGraph graph = new VariantGraph();
+        Algorithms.create(Algorithms.DEKKER).collate(graph, witnesses);
+        return graph;
+    }
+
+    /**
+     * Gives access to the graph merge of the Dekker algorithm, so the first witness can be merged against a token index
+     * spanning all witnesses.
+     */
+    static class FirstWitnessMerge extends DekkerAlgorithm {
+
+        VariantGraph.Vertex[] merge(VariantGraph graph, TokenIndex tokenIndex, SimpleWitness witness) {
+            merge(graph, witness, Collections.emptyMap());
+
+            final VariantGraph.Vertex[] vertices = new VariantGraph.Vertex[tokenIndex.token_array.length];
+            int tokenPosition = tokenIndex.getStartTokenPositionForWitness(witness);
+            for (Token token : witness) {
+                vertices[tokenPosition++] = witnessTokenVertices.get(token);
+            }
+            return vertices;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.benchmarks;
+
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.simple.SimpleWitness;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collates synthetic witness sets, scaled by witness count and witness length.
+ * <p>
+ * Every collation of the larger configurations takes seconds to minutes, therefore each measurement is a single
+ * collation. The full parameter matrix runs for hours; restrict it on the command line, e.g.
+ * <code>-p algorithm=dekker -p witnesses=50 -p length=200000</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SyntheticCollationBenchmark {
+
+    @Param({"2", "10", "50", "100"})
+    public int witnesses;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int length;
+
+    @Param({Algorithms.DEKKER, Algorithms.MEDITE, Algorithms.NEEDLEMAN_WUNSCH, Algorithms.GREEDY_STRING_TILING})
+    public String algorithm;
+
+    @Param({Algorithms.HASH_STORAGE, Algorithms.COMPACT_STORAGE})
+    public String storage;
+
+    @Param({"42"})
+    public long seed;
+
+    private List<SimpleWitness> corpus;
+    private int tokenCount;
+
+    @Setup(Level.Trial)
+    public void generateCorpus() {
+        corpus = Corpora.synthetic(witnesses, length, seed);
+        tokenCount = Corpora.tokenCount(corpus);
+    }
+
+    @Benchmark
+    public VariantGraph collate(TokenThroughput throughput) {
+        final VariantGraph graph = Algorithms.graph(storage);
+        Algorithms.create(algorithm).collate(graph, corpus);
+        throughput.tokens += tokenCount;
+        return graph;
+    }
+}
@@ -20,6 +20,7 @@
 package eu.interedition.collatex;
 
 import eu.interedition.collatex.dekker.Match;
+import eu.interedition.collatex.matching.TokenEquivalence;
 import eu.interedition.collatex.needlemanwunsch.NeedlemanWunschAlgorithm;
 import eu.interedition.collatex.needlemanwunsch.NeedlemanWunschScorer;
 import eu.interedition.collatex.util.VertexMatch;
@@ -54,6 +55,18 @@ public interface CollationAlgorithm {
         protected final Logger LOG = Logger.getLogger(getClass().getName());
         protected Map<Token, VariantGraph.Vertex> witnessTokenVertices;
 
+        // the comparator tokens are classified by, if the algorithm compares token classes
+        private final Comparator<Token> equivalenceComparator;
+        private TokenEquivalence equivalence;
+
+        protected Base() {
+            this(null);
+        }
+
+        protected Base(Comparator<Token> equivalenceComparator) {
+            this.equivalenceComparator = equivalenceComparator;
+        }
+
         @Override
         public void collate(VariantGraph against, Iterable<Token>... witnesses) {
             collate(against, Arrays.asList(witnesses));
@@ -61,15 +74,34 @@ public interface CollationAlgorithm {
 
         @Override
         public void collate(VariantGraph against, List<? extends Iterable<Token>> witnesses) {
-            for (Iterable<Token> witness : witnesses) {
-                if (LOG.isLoggable(Level.FINE)) {
-                    LOG.log(Level.FINE, "heap space: {0}/{1}", new Object[]{
-                        Runtime.getRuntime().totalMemory(),
-                        Runtime.getRuntime().maxMemory()
-                    });
+            // tokens of all witnesses are classified once per collation
+            equivalence = (equivalenceComparator == null ? null : TokenEquivalence.of(equivalenceComparator, witnesses));
+            try {
+                for (Iterable<Token> witness : witnesses) {
+                    if (LOG.isLoggable(Level.FINE)) {
+                        LOG.log(Level.FINE, "heap space: {0}/{1}", new Object[]{
+                            Runtime.getRuntime().totalMemory(),
+                            Runtime.getRuntime().maxMemory()
+                        });
+                    }
+                    collate(against, witness);
                 }
-                collate(against, witness);
+            } finally {
+                equivalence = null;
+            }
+        }
+
+        /**
+         * @return the token classes of the current collation, or classes of the given witness' tokens if it is
+         * collated by itself; tokens of the graph are classified on demand then. <code>null</code> if the algorithm
+         * has no comparator to classify tokens by or the comparator defines no token classes, see
+         * {@link TokenEquivalence}; tokens have to be compared pairwise then
+         */
+        protected TokenEquivalence equivalence(Iterable<Token> witness) {
+            if (equivalenceComparator == null) {
+                return null;
             }
+            return (equivalence == null ? TokenEquivalence.of(equivalenceComparator, Collections.singletonList(witness)) : equivalence);
         }
 
         protected void merge(VariantGraph into, Iterable<Token> witnessTokens, Map<Token, VariantGraph.Vertex> alignments) {
@@ -83,7 +115,7 @@ public interface CollationAlgorithm {
             }
             witnessTokenVertices = new HashMap<>();
             VariantGraph.Vertex last = into.getStart();
-            final Set<Witness> witnessSet = Collections.singleton(witness);
+            final WitnessSet witnessSet = into.witnessRegistry().singleton(witness);
             for (Token token : witnessTokens) {
                 VariantGraph.Vertex matchingVertex = alignments.get(token);
                 if (matchingVertex == null) {
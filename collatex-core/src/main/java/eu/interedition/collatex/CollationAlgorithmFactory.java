@@ -43,6 +43,10 @@ public class CollationAlgorithmFactory {
         return new NeedlemanWunschAlgorithm(comparator);
     }
 
+    public static CollationAlgorithm needlemanWunsch(Comparator<Token> comparator, NeedlemanWunschAlgorithm.Mode mode) {
+        return new NeedlemanWunschAlgorithm(comparator, mode);
+    }
+
     public static CollationAlgorithm greedyStringTiling(Comparator<Token> comparator, int minimumTileLength) {
         return new GreedyStringTilingAlgorithm(comparator, minimumTileLength);
     }
@@ -21,12 +21,12 @@ package eu.interedition.collatex;
 
 import eu.interedition.collatex.util.VariantGraphTraversal;
 
-import java.util.ArrayDeque;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -34,20 +34,36 @@ import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
+ * A directed acyclic graph of token vertices and witness-labelled edges, representing the alignment of witnesses.
+ * <p>
+ * How vertices, tokens and edges are stored is up to a {@link Storage}, selected when the graph is created. The default
+ * one keeps hash-based sets and maps per vertex; {@link eu.interedition.collatex.util.CompactVariantGraphStorage}
+ * keeps the graph in primitive arrays instead, for large collations.
+ *
  * @author <a href="http://gregor.middell.net/">Gregor Middell</a>
  */
 public class VariantGraph {
     final VariantGraph.Vertex start;
     final VariantGraph.Vertex end;
     final Map<Vertex, Set<Set<Vertex>>> transpositionIndex = new HashMap<>();
+    final Storage storage;
+    final WitnessRegistry witnessRegistry = new WitnessRegistry();
+    final VariantGraphRanks ranks = new VariantGraphRanks(this);
+    Vertex[] vertices = new Vertex[64];
+    int vertexCount = 0;
 
     public VariantGraph() {
+        this(new HashStorage());
+    }
+
+    public VariantGraph(Storage storage) {
         super();
+        this.storage = storage;
         this.start = new VariantGraph.Vertex(this);
         this.end = new VariantGraph.Vertex(this);
 
-        this.start.outgoing.put(this.end, Collections.emptySet());
-        this.end.incoming.put(this.start, Collections.emptySet());
+        storage.connect(this.start, this.end, witnessRegistry.empty());
+        ranks.connect(this.start, this.end);
     }
 
     public Vertex getStart() {
@@ -58,6 +74,30 @@ public class VariantGraph {
         return end;
     }
 
+    /**
+     * @return the registry of all witnesses in this graph, used for labelling its edges
+     */
+    public WitnessRegistry witnessRegistry() {
+        return witnessRegistry;
+    }
+
+    /**
+     * @return the number of vertices created in this graph so far, i.e. an upper bound of all {@link Vertex#id() vertex ids}
+     */
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return the vertex with the given id
+     */
+    public Vertex vertex(int id) {
+        if (id < 0 || id >= vertexCount) {
+            throw new IndexOutOfBoundsException(Integer.toString(id));
+        }
+        return vertices[id];
+    }
+
     public Set<Set<Vertex>> transpositions() {
         return transpositionIndex.values().stream().flatMap(Set::stream).collect(Collectors.toSet());
     }
@@ -68,7 +108,7 @@ public class VariantGraph {
 
     public Vertex add(Token token) {
         final VariantGraph.Vertex vertex = new VariantGraph.Vertex(this);
-        vertex.tokens.add(token);
+        storage.add(vertex, Collections.singleton(token));
         return vertex;
     }
 
@@ -77,14 +117,10 @@ public class VariantGraph {
             throw new IllegalArgumentException();
         }
 
-        witnesses = new HashSet<>(witnesses);
-        Optional.ofNullable(from.outgoing.remove(to)).ifPresent(witnesses::addAll);
-
-        from.outgoing.put(to, witnesses);
-        to.incoming.put(from, witnesses);
+        storage.connect(from, to, witnessRegistry.of(witnesses));
+        ranks.connect(from, to);
 
-        start.outgoing.remove(end);
-        end.incoming.remove(start);
+        storage.disconnect(start, end);
     }
 
     public Set<Vertex> transpose(Set<Vertex> vertices) {
@@ -103,8 +139,8 @@ public class VariantGraph {
         return t;
     }
 
-    public Set<Witness> witnesses() {
-        return start.outgoing().values().stream().flatMap(Collection::stream).collect(Collectors.toSet());
+    public WitnessSet witnesses() {
+        return start.witnessesOf(start.outgoingEdges());
     }
 
     @Override
@@ -118,20 +154,62 @@ public class VariantGraph {
      */
     public static class Vertex {
         private final VariantGraph graph;
-        private final Set<Token> tokens = new HashSet<>();
-        private final Map<Vertex, Set<Witness>> outgoing = new HashMap<>();
-        private final Map<Vertex, Set<Witness>> incoming = new HashMap<>();
+        private final int id;
 
         public Vertex(VariantGraph graph) {
             this.graph = graph;
+            this.id = graph.vertexCount++;
+            if (id == graph.vertices.length) {
+                graph.vertices = Arrays.copyOf(graph.vertices, id * 2);
+            }
+            graph.vertices[id] = this;
+            graph.storage.add(this);
+            graph.ranks.add(this);
+        }
+
+        /**
+         * @return a number identifying this vertex within its graph, dense and assigned in order of creation
+         */
+        public int id() {
+            return id;
         }
 
+        /**
+         * @return the length of the longest path from the start vertex to this one, kept up to date while edges are added
+         * to the graph
+         */
+        public int rank() {
+            return graph.ranks.rank(this);
+        }
+
+        /**
+         * @return an unmodifiable view of the incoming edges of this vertex, keyed by their start vertex
+         */
         public Map<Vertex, Set<Witness>> incoming() {
-            return incoming;
+            return Collections.unmodifiableMap(incomingEdges());
         }
 
+        /**
+         * @return an unmodifiable view of the outgoing edges of this vertex, keyed by their end vertex
+         */
         public Map<Vertex, Set<Witness>> outgoing() {
-            return outgoing;
+            return Collections.unmodifiableMap(outgoingEdges());
+        }
+
+        /**
+         * Like {@link #incoming()}, but with the edges labelled by their {@link WitnessSet witness sets}; neither the
+         * map nor its labels may be modified.
+         */
+        public Map<Vertex, WitnessSet> incomingEdges() {
+            return graph.storage.incoming(this);
+        }
+
+        /**
+         * Like {@link #outgoing()}, but with the edges labelled by their {@link WitnessSet witness sets}; neither the
+         * map nor its labels may be modified.
+         */
+        public Map<Vertex, WitnessSet> outgoingEdges() {
+            return graph.storage.outgoing(this);
         }
 
         public Set<Set<Vertex>> transpositions() {
@@ -139,67 +217,198 @@ public class VariantGraph {
         }
 
         public Set<Token> tokens() {
-            return tokens;
+            return graph.storage.tokens(this);
         }
 
-        public Set<Witness> witnesses() {
-            return incoming().values().stream().flatMap(Set::stream).collect(Collectors.toSet());
+        public WitnessSet witnesses() {
+            return witnessesOf(incomingEdges());
+        }
+
+        private WitnessSet witnessesOf(Map<Vertex, WitnessSet> edges) {
+            WitnessSet witnesses = graph.witnessRegistry.empty();
+            for (WitnessSet edge : edges.values()) {
+                witnesses = witnesses.union(edge);
+            }
+            return witnesses;
         }
 
         public void add(Iterable<Token> tokens) {
-            tokens.forEach(this.tokens::add);
+            graph.storage.add(this, tokens);
         }
 
         public VariantGraph graph() {
             return graph;
         }
 
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
         public String toString() {
-            return tokens.toString();
+            return tokens().toString();
+        }
+    }
+
+    /**
+     * Keeps the tokens and edges of the vertices in a variant graph.
+     * <p>
+     * Edge labels and adjacency maps handed out by a storage must not be modified by callers; all modifications go
+     * through {@link #add(Vertex, Iterable)}, {@link #connect(Vertex, Vertex, WitnessSet)} and {@link #disconnect(Vertex, Vertex)}.
+     */
+    public interface Storage {
+
+        /**
+         * Registers a newly created vertex, whose {@link Vertex#id() id} is one larger than the one registered before.
+         */
+        void add(Vertex vertex);
+
+        void add(Vertex vertex, Iterable<Token> tokens);
+
+        Set<Token> tokens(Vertex vertex);
+
+        Map<Vertex, WitnessSet> incoming(Vertex vertex);
+
+        Map<Vertex, WitnessSet> outgoing(Vertex vertex);
+
+        /**
+         * Adds an edge between two vertices, or extends the witnesses of an existing one.
+         */
+        void connect(Vertex from, Vertex to, WitnessSet witnesses);
+
+        /**
+         * Removes the edge between two vertices, if there is one.
+         *
+         * @return the witnesses of the removed edge or <code>null</code>
+         */
+        WitnessSet disconnect(Vertex from, Vertex to);
+    }
+
+    /**
+     * Stores tokens in hash sets and edges in hash maps of each vertex.
+     */
+    static class HashStorage implements Storage {
+        private final List<Set<Token>> tokens = new ArrayList<>();
+        private final List<Map<Vertex, WitnessSet>> outgoing = new ArrayList<>();
+        private final List<Map<Vertex, WitnessSet>> incoming = new ArrayList<>();
+
+        @Override
+        public void add(Vertex vertex) {
+            tokens.add(new HashSet<>());
+            outgoing.add(new HashMap<>());
+            incoming.add(new HashMap<>());
+        }
+
+        @Override
+        public void add(Vertex vertex, Iterable<Token> tokens) {
+            tokens.forEach(this.tokens.get(vertex.id)::add);
+        }
+
+        @Override
+        public Set<Token> tokens(Vertex vertex) {
+            return tokens.get(vertex.id);
+        }
+
+        @Override
+        public Map<Vertex, WitnessSet> incoming(Vertex vertex) {
+            return incoming.get(vertex.id);
+        }
+
+        @Override
+        public Map<Vertex, WitnessSet> outgoing(Vertex vertex) {
+            return outgoing.get(vertex.id);
+        }
+
+        @Override
+        public void connect(Vertex from, Vertex to, WitnessSet witnesses) {
+            final WitnessSet label = Optional.ofNullable(outgoing(from).get(to)).map(witnesses::union).orElse(witnesses);
+
+            outgoing(from).put(to, label);
+            incoming(to).put(from, label);
+        }
+
+        @Override
+        public WitnessSet disconnect(Vertex from, Vertex to) {
+            incoming(to).remove(from);
+            return outgoing(from).remove(to);
         }
     }
 
+    /**
+     * Joins chains of vertices into single vertices, wherever the witnesses pass through a chain without branching.
+     * <p>
+     * A vertex is joined with its successor if it has no other outgoing edge, the successor has no other incoming edge
+     * and is not the end vertex, and both are part of the same transpositions. The maximal chains of joinable vertices
+     * are determined in one traversal, then each chain is merged into its first vertex at once.
+     */
     public static final Function<VariantGraph, VariantGraph> JOIN = graph -> {
-        final Set<Vertex> processed = new HashSet<>();
-        final Deque<Vertex> queue = new ArrayDeque<>(graph.start.outgoing.keySet());
-
-        while (!queue.isEmpty()) {
-            final Vertex vertex = queue.pop();
-            final Set<Set<Vertex>> transpositions = new HashSet<>(vertex.transpositions());
-            if (vertex.outgoing.size() == 1) {
-                final Vertex joinCandidateVertex = vertex.outgoing.keySet().iterator().next();
-                final Set<Set<Vertex>> joinCandidateTranspositions = new HashSet<>(joinCandidateVertex.transpositions());
-
-                boolean canJoin = !graph.end.equals(joinCandidateVertex) && //
-                    joinCandidateVertex.incoming.size() == 1 && //
-                    transpositions.equals(joinCandidateTranspositions);
-                if (canJoin) {
-                    vertex.add(joinCandidateVertex.tokens());
-                    for (Set<Vertex> t : new HashSet<>(joinCandidateVertex.transpositions())) {
-                        final Set<Vertex> transposed = new HashSet<>(t);
-                        transposed.remove(joinCandidateVertex);
-                        transposed.add(vertex);
-                        for (Vertex tv : t) {
-                            graph.transpositionIndex.getOrDefault(tv, Collections.emptySet()).remove(t);
-                        }
-                        graph.transpose(transposed);
-                    }
-
-                    vertex.outgoing.clear();
-                    vertex.outgoing.putAll(joinCandidateVertex.outgoing);
-
-                    vertex.outgoing.keySet().forEach(v -> v.incoming.put(vertex, v.incoming.remove(joinCandidateVertex)));
-
-                    queue.push(vertex);
-                    continue;
+        graph.ranks.invalidate();
+
+        final List<List<Vertex>> chains = new ArrayList<>();
+        final boolean[] joined = new boolean[graph.vertexCount()];
+        graph.vertices().forEach(vertex -> {
+            if (vertex.equals(graph.start) || joined[vertex.id]) {
+                return;
+            }
+            List<Vertex> chain = null;
+            for (Vertex last = vertex, next; (next = joinCandidate(graph, last)) != null; last = next) {
+                if (chain == null) {
+                    chain = new ArrayList<>();
+                    chain.add(vertex);
                 }
+                chain.add(next);
+                joined[next.id] = true;
             }
+            if (chain != null) {
+                chains.add(chain);
+            }
+        });
 
-            // FIXME: Why do we run out of memory in some cases here, if this is not checked?
-            processed.add(vertex);
-            vertex.outgoing.keySet().stream().filter(v -> !processed.contains(v)).forEach(queue::push);
-        }
-
+        chains.forEach(graph::join);
         return graph;
     };
+
+    private static Vertex joinCandidate(VariantGraph graph, Vertex vertex) {
+        final Map<Vertex, WitnessSet> outgoing = vertex.outgoingEdges();
+        if (outgoing.size() != 1) {
+            return null;
+        }
+        final Vertex candidate = outgoing.keySet().iterator().next();
+        final boolean canJoin = !graph.end.equals(candidate) && //
+            candidate.incomingEdges().size() == 1 && //
+            vertex.transpositions().equals(candidate.transpositions());
+        return (canJoin ? candidate : null);
+    }
+
+    private void join(List<Vertex> chain) {
+        final Vertex vertex = chain.get(0);
+        final List<Vertex> joined = chain.subList(1, chain.size());
+        final Vertex last = chain.get(chain.size() - 1);
+
+        final Set<Set<Vertex>> transpositions = new HashSet<>();
+        for (Vertex joinedVertex : joined) {
+            vertex.add(joinedVertex.tokens());
+            transpositions.addAll(joinedVertex.transpositions());
+        }
+        for (Set<Vertex> t : transpositions) {
+            for (Vertex tv : t) {
+                transpositionIndex.getOrDefault(tv, Collections.emptySet()).remove(t);
+            }
+        }
+        joined.forEach(transpositionIndex::remove);
+        for (Set<Vertex> t : transpositions) {
+            final Set<Vertex> transposed = new HashSet<>(t);
+            transposed.removeAll(joined);
+            transposed.add(vertex);
+            transpose(transposed);
+        }
+
+        for (int vc = 1; vc < chain.size(); vc++) {
+            storage.disconnect(chain.get(vc - 1), chain.get(vc));
+        }
+        for (Map.Entry<Vertex, WitnessSet> edge : new ArrayList<>(last.outgoingEdges().entrySet())) {
+            storage.disconnect(last, edge.getKey());
+            storage.connect(vertex, edge.getKey(), edge.getValue());
+        }
+    }
 }
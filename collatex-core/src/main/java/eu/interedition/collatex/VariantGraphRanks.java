@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex;
+
+import eu.interedition.collatex.util.VariantGraphTraversal;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the rank of every vertex in a variant graph, i.e. the length of the longest path from the start vertex to it,
+ * in an array indexed by vertex id.
+ * <p>
+ * Ranks only grow while edges are added. Adding an edge raises the rank of its target if needed; raising the ranks of
+ * the target's successors in turn is deferred until ranks are read, so that a witness merged into the graph costs a
+ * single propagation through the part of the graph whose ranks change. Removing edges invalidates all ranks; they are
+ * recomputed with the next read.
+ */
+final class VariantGraphRanks {
+
+    private final VariantGraph graph;
+
+    private int[] ranks = new int[64];
+    private boolean valid = true;
+
+    // min-heap of vertices whose successors might need a higher rank, as (rank << 32 | vertex id)
+    private long[] pending = new long[16];
+    private int pendingCount = 0;
+
+    VariantGraphRanks(VariantGraph graph) {
+        this.graph = graph;
+    }
+
+    void add(VariantGraph.Vertex vertex) {
+        final int id = vertex.id();
+        if (id >= ranks.length) {
+            ranks = Arrays.copyOf(ranks, Math.max(id + 1, ranks.length * 2));
+        }
+        ranks[id] = 0;
+    }
+
+    void connect(VariantGraph.Vertex from, VariantGraph.Vertex to) {
+        if (!valid) {
+            return;
+        }
+        final int rank = ranks[from.id()] + 1;
+        if (ranks[to.id()] < rank) {
+            ranks[to.id()] = rank;
+            push(rank, to.id());
+        }
+    }
+
+    void invalidate() {
+        valid = false;
+        pendingCount = 0;
+    }
+
+    int rank(VariantGraph.Vertex vertex) {
+        if (!valid) {
+            recompute();
+        } else if (pendingCount > 0) {
+            propagate();
+        }
+        return ranks[vertex.id()];
+    }
+
+    private void propagate() {
+        while (pendingCount > 0) {
+            final long next = pop();
+            final int rank = (int) (next >>> 32);
+            final int id = (int) next;
+            if (ranks[id] != rank) {
+                // superseded by a later raise of the same vertex
+                continue;
+            }
+            for (VariantGraph.Vertex successor : graph.vertex(id).outgoingEdges().keySet()) {
+                if (ranks[successor.id()] <= rank) {
+                    ranks[successor.id()] = rank + 1;
+                    push(rank + 1, successor.id());
+                }
+            }
+        }
+    }
+
+    private void recompute() {
+        VariantGraphTraversal.of(graph).forEachId(id -> {
+            int rank = -1;
+            for (VariantGraph.Vertex predecessor : graph.vertex(id).incomingEdges().keySet()) {
+                rank = Math.max(rank, ranks[predecessor.id()]);
+            }
+            ranks[id] = rank + 1;
+        });
+        valid = true;
+    }
+
+    private void push(int rank, int id) {
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        final long entry = ((long) rank << 32) | id;
+        int child = pendingCount++;
+        while (child > 0) {
+            final int parent = (child - 1) >>> 1;
+            if (pending[parent] <= entry) {
+                break;
+            }
+            pending[child] = pending[parent];
+            child = parent;
+        }
+        pending[child] = entry;
+    }
+
+    private long pop() {
+        final long top = pending[0];
+        final long last = pending[--pendingCount];
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= pendingCount) {
+                break;
+            }
+            if (child + 1 < pendingCount && pending[child + 1] < pending[child]) {
+                child++;
+            }
+            if (last <= pending[child]) {
+                break;
+            }
+            pending[parent] = pending[child];
+            parent = child;
+        }
+        pending[parent] = last;
+        return top;
+    }
+}
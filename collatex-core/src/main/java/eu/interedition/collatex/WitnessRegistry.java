@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns dense ordinals to witnesses, in order of registration, so sets of them can be represented as bitsets.
+ *
+ * @see WitnessSet
+ */
+public class WitnessRegistry {
+
+    private final Map<Witness, Integer> ordinals = new HashMap<>();
+    private final List<Witness> witnesses = new ArrayList<>();
+
+    final WitnessSet empty = new WitnessSet(this, new long[0]);
+
+    /**
+     * @return the ordinal of the given witness, registering it if necessary
+     */
+    public int register(Witness witness) {
+        Integer ordinal = ordinals.get(witness);
+        if (ordinal == null) {
+            ordinal = witnesses.size();
+            ordinals.put(witness, ordinal);
+            witnesses.add(witness);
+        }
+        return ordinal;
+    }
+
+    /**
+     * @return the ordinal of the given witness or <code>-1</code>, if it has not been registered
+     */
+    public int ordinal(Object witness) {
+        final Integer ordinal = ordinals.get(witness);
+        return (ordinal == null ? -1 : ordinal);
+    }
+
+    public Witness witness(int ordinal) {
+        return witnesses.get(ordinal);
+    }
+
+    public int size() {
+        return witnesses.size();
+    }
+
+    public WitnessSet empty() {
+        return empty;
+    }
+
+    public WitnessSet singleton(Witness witness) {
+        final int ordinal = register(witness);
+        final long[] words = new long[(ordinal >>> 6) + 1];
+        words[ordinal >>> 6] = (1L << ordinal);
+        return new WitnessSet(this, words);
+    }
+
+    /**
+     * @return the given witnesses as a set of this registry, registering them if necessary
+     */
+    public WitnessSet of(Iterable<? extends Witness> witnesses) {
+        if (witnesses instanceof WitnessSet && ((WitnessSet) witnesses).registry == this) {
+            return (WitnessSet) witnesses;
+        }
+        long[] words = new long[(size() + 63) >>> 6];
+        for (Witness witness : witnesses) {
+            final int ordinal = register(witness);
+            if ((ordinal >>> 6) >= words.length) {
+                words = Arrays.copyOf(words, (ordinal >>> 6) + 1);
+            }
+            words[ordinal >>> 6] |= (1L << ordinal);
+        }
+        return WitnessSet.trimmed(this, words);
+    }
+
+    /**
+     * @return the registered ones among the given witnesses as a set of this registry; other witnesses are left out
+     * and not registered
+     */
+    public WitnessSet registered(Iterable<? extends Witness> witnesses) {
+        if (witnesses instanceof WitnessSet && ((WitnessSet) witnesses).registry == this) {
+            return (WitnessSet) witnesses;
+        }
+        final long[] words = new long[(size() + 63) >>> 6];
+        for (Witness witness : witnesses) {
+            final int ordinal = ordinal(witness);
+            if (ordinal >= 0) {
+                words[ordinal >>> 6] |= (1L << ordinal);
+            }
+        }
+        return WitnessSet.trimmed(this, words);
+    }
+
+    /**
+     * @return a set of this registry with the witnesses whose ordinals are set in the given range of words
+     */
+    public WitnessSet of(long[] words, int from, int to) {
+        while (to > from && words[to - 1] == 0) {
+            to--;
+        }
+        return (to == from ? empty : new WitnessSet(this, Arrays.copyOfRange(words, from, to)));
+    }
+}
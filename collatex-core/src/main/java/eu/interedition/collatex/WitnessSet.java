@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable set of witnesses, represented as a bitset of their ordinals in a {@link WitnessRegistry}.
+ * <p>
+ * Sets of the same registry are compared, combined and hashed word by word. A witness set equals any other set with
+ * the same witnesses, and hashes like it.
+ */
+public final class WitnessSet extends AbstractSet<Witness> {
+
+    final WitnessRegistry registry;
+
+    // without trailing zero words, so equal sets of a registry have equal words
+    private final long[] words;
+
+    private int hash = -1;
+
+    WitnessSet(WitnessRegistry registry, long[] words) {
+        this.registry = registry;
+        this.words = words;
+    }
+
+    static WitnessSet trimmed(WitnessRegistry registry, long[] words) {
+        int length = words.length;
+        while (length > 0 && words[length - 1] == 0) {
+            length--;
+        }
+        if (length == 0) {
+            return registry.empty;
+        }
+        return new WitnessSet(registry, (length == words.length ? words : Arrays.copyOf(words, length)));
+    }
+
+    public WitnessRegistry registry() {
+        return registry;
+    }
+
+    /**
+     * @return the number of words of the bitset, beyond which all bits are unset
+     */
+    public int wordCount() {
+        return words.length;
+    }
+
+    /**
+     * @return the bits of the witness ordinals <code>index * 64</code> to <code>index * 64 + 63</code>
+     */
+    public long word(int index) {
+        return (index < words.length ? words[index] : 0L);
+    }
+
+    public boolean containsOrdinal(int ordinal) {
+        return ordinal >= 0 && (ordinal >>> 6) < words.length && (words[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+
+    public WitnessSet union(WitnessSet other) {
+        compatible(other);
+        if (other.words.length > words.length) {
+            return other.union(this);
+        }
+        long[] union = null;
+        for (int wc = 0; wc < other.words.length; wc++) {
+            final long word = words[wc] | other.words[wc];
+            if (word != words[wc]) {
+                if (union == null) {
+                    union = words.clone();
+                }
+                union[wc] = word;
+            }
+        }
+        return (union == null ? this : new WitnessSet(registry, union));
+    }
+
+    public WitnessSet intersection(WitnessSet other) {
+        compatible(other);
+        final long[] intersection = new long[Math.min(words.length, other.words.length)];
+        for (int wc = 0; wc < intersection.length; wc++) {
+            intersection[wc] = words[wc] & other.words[wc];
+        }
+        return trimmed(registry, intersection);
+    }
+
+    public boolean intersects(WitnessSet other) {
+        compatible(other);
+        for (int wc = 0, length = Math.min(words.length, other.words.length); wc < length; wc++) {
+            if ((words[wc] & other.words[wc]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void compatible(WitnessSet other) {
+        if (registry != other.registry) {
+            throw new IllegalArgumentException("Witness sets of different registries");
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return containsOrdinal(registry.ordinal(o));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return words.length == 0;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (long word : words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    @Override
+    public Iterator<Witness> iterator() {
+        return new Iterator<Witness>() {
+            private int word = 0;
+            private long remaining = (words.length == 0 ? 0 : words[0]);
+
+            @Override
+            public boolean hasNext() {
+                while (remaining == 0 && word + 1 < words.length) {
+                    remaining = words[++word];
+                }
+                return remaining != 0;
+            }
+
+            @Override
+            public Witness next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final int bit = Long.numberOfTrailingZeros(remaining);
+                remaining &= (remaining - 1);
+                return registry.witness((word << 6) + bit);
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof WitnessSet && ((WitnessSet) o).registry == registry) {
+            return Arrays.equals(words, ((WitnessSet) o).words);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        if (hash == -1) {
+            hash = super.hashCode();
+        }
+        return hash;
+    }
+}
@@ -26,7 +26,6 @@ import eu.interedition.collatex.dekker.token_index.TokenIndexToMatches;
 import eu.interedition.collatex.dekker.token_index.TokenIndex;
 import eu.interedition.collatex.dekker.island.*;
 import eu.interedition.collatex.matching.EqualityTokenComparator;
-import eu.interedition.collatex.util.VariantGraphRanking;
 
 import java.util.*;
 import java.util.logging.Level;
@@ -46,6 +45,8 @@ public class DekkerAlgorithm extends CollationAlgorithm.Base implements Inspecta
     private List<List<Match>> phraseMatches;
     private List<List<Match>> transpositions;
     private boolean mergeTranspositions = false;
+    private int tokenIndexParallelism = 1;
+    private IslandSelectionStrategy islandSelectionStrategy = IslandSelectionStrategy.greedy();
 
     public DekkerAlgorithm() {
         this(new EqualityTokenComparator());
@@ -71,6 +72,7 @@ public class DekkerAlgorithm extends CollationAlgorithm.Base implements Inspecta
         }
 
         this.tokenIndex = new TokenIndex(comparator, witnesses);
+        tokenIndex.setParallelism(tokenIndexParallelism);
         tokenIndex.prepare();
 
         // phase 2: alignment phase
@@ -108,14 +110,13 @@ public class DekkerAlgorithm extends CollationAlgorithm.Base implements Inspecta
             }
 
             // Phase 2b: do the actual alignment
-            IslandConflictResolver resolver = new IslandConflictResolver(new IslandCollection(allPossibleIslands));
-            preferredIslands = resolver.createNonConflictingVersion().getIslands();
+            preferredIslands = islandSelectionStrategy.select(allPossibleIslands);
 
             // we need to convert the islands into Map<Token, Vertex> for further processing
             Map<Token, VariantGraph.Vertex> alignments = new HashMap<>();
             for (Island island : preferredIslands) {
-                for (Coordinate c : island) {
-                    alignments.put(c.match.token, c.match.vertex);
+                for (int i = 0; i < island.size(); i++) {
+                    alignments.put(island.getToken(i), island.getVertex(i));
                 }
             }
 
@@ -177,14 +178,11 @@ public class DekkerAlgorithm extends CollationAlgorithm.Base implements Inspecta
             // we filter out small transposed phrases over large distances
             List<List<Match>> falseTranspositions = new ArrayList<>();
 
-            // rank the variant graph
-            VariantGraphRanking ranking = VariantGraphRanking.of(graph);
-
             for (List<Match> transposedPhrase : transpositions) {
                 Match match = transposedPhrase.get(0);
                 VariantGraph.Vertex v1 = witnessTokenVertices.get(match.token);
                 VariantGraph.Vertex v2 = match.vertex;
-                int distance = Math.abs(ranking.apply(v1) - ranking.apply(v2)) - 1;
+                int distance = Math.abs(v1.rank() - v2.rank()) - 1;
                 if (distance > transposedPhrase.size() * 3) {
                     falseTranspositions.add(transposedPhrase);
                 }
@@ -254,4 +252,18 @@ public class DekkerAlgorithm extends CollationAlgorithm.Base implements Inspecta
     public void setMergeTranspositions(boolean b) {
         this.mergeTranspositions = b;
     }
+
+    /**
+     * The number of threads building the token index, see {@link TokenIndex#setParallelism(int)}.
+     */
+    public void setTokenIndexParallelism(int parallelism) {
+        this.tokenIndexParallelism = parallelism;
+    }
+
+    /*
+     * How the islands aligning a witness are selected from all possible ones; greedy by default.
+     */
+    public void setIslandSelectionStrategy(IslandSelectionStrategy islandSelectionStrategy) {
+        this.islandSelectionStrategy = islandSelectionStrategy;
+    }
 }
@@ -20,6 +20,7 @@ package eu.interedition.collatex.dekker;
 
 import eu.interedition.collatex.Token;
 import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.WitnessSet;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -37,6 +38,7 @@ public class PhraseMatchDetector {
         List<VariantGraph.Vertex> basePhrase = new ArrayList<>();
         List<Token> witnessPhrase = new ArrayList<>();
         VariantGraph.Vertex previous = base.getStart();
+        WitnessSet previousWitnesses = previous.witnesses();
 
         for (Token token : tokens) {
             if (!linkedTokens.containsKey(token)) {
@@ -50,15 +52,17 @@ public class PhraseMatchDetector {
             // - there should be a directed edge between previous and base vertex
             // - there may not be a longer path between previous and base vertex
             boolean sameTranspositions = new HashSet<>(previous.transpositions()).equals(new HashSet<>(baseVertex.transpositions()));
-            boolean sameWitnesses = previous.witnesses().equals(baseVertex.witnesses());
-            boolean directedEdge = previous.outgoing().containsKey(baseVertex);
-            boolean isNear = sameTranspositions && sameWitnesses && directedEdge && (previous.outgoing().size() == 1 || baseVertex.incoming().size() == 1);
+            final WitnessSet baseWitnesses = baseVertex.witnesses();
+            boolean sameWitnesses = previousWitnesses.equals(baseWitnesses);
+            boolean directedEdge = previous.outgoingEdges().containsKey(baseVertex);
+            boolean isNear = sameTranspositions && sameWitnesses && directedEdge && (previous.outgoingEdges().size() == 1 || baseVertex.incomingEdges().size() == 1);
             if (!isNear) {
                 addNewPhraseMatchAndClearBuffer(phraseMatches, basePhrase, witnessPhrase);
             }
             basePhrase.add(baseVertex);
             witnessPhrase.add(token);
             previous = baseVertex;
+            previousWitnesses = baseWitnesses;
         }
         if (!basePhrase.isEmpty()) {
             phraseMatches.add(Match.createPhraseMatch(basePhrase, witnessPhrase));
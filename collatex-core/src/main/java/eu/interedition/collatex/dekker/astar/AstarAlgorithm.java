@@ -1,74 +1,186 @@
 package eu.interedition.collatex.dekker.astar;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import eu.interedition.collatex.CollationAlgorithm;
 
 
 /*
  * Implementation of the a* algorithm to find the optimal
  * solution in a decision tree.
  *
+ * The state of every node reached is kept in a NodeRecord; the tentative
+ * nodes are kept in an indexed heap. Subclasses that can number their nodes
+ * pass the number of nodes and a function numbering them to the constructor,
+ * so the records are kept in an array instead of a hash map.
+ *
  * @author: Ronald Haentjens Dekker
  */
 public abstract class AstarAlgorithm<N, C extends Cost<C>> {
-  // The map of navigated nodes.
+  // The map of navigated nodes, a view of the records of the last search.
   protected Map<N, N> cameFrom;
 
-  protected List<N> aStar(N startNode, C startCost) {
-    // The set of nodes already evaluated.
-    Set<N> closed = new HashSet<>();
-    cameFrom = new HashMap<>();
+  // The number of nodes identified by nodeId, 0 if nodes are not numbered
+  private final int nodeCount;
+  private final ToIntFunction<N> nodeId;
+
+  // The records of the nodes reached, by node or by node id
+  private Map<N, NodeRecord<N, C>> records;
+  private NodeRecord<N, C>[] recordsById;
+  private long generatedRecords;
+
+  // The order of tentative nodes with the same estimated cost
+  private Comparator<NodeRecord<N, C>> tieBreaking = TieBreaking.fifo();
+
+  // The maximum number of tentative nodes kept, 0 for no limit
+  private int beamWidth = 0;
+  // The maximum number of nodes evaluated, 0 for no limit
+  private int nodeBudget = 0;
+
+  // Counters of the last search
+  private int expandedNodes;
+  private int generatedNodes;
+  private int reopenedNodes;
+
+  protected AstarAlgorithm() {
+    this.nodeCount = 0;
+    this.nodeId = null;
+  }
+
+  /*
+   * Numbers the nodes by the given function, with ids between 0 and the given node count.
+   */
+  protected AstarAlgorithm(int nodeCount, ToIntFunction<N> nodeId) {
+    if (nodeCount <= 0) {
+      throw new IllegalArgumentException("Node count must be positive: " + nodeCount);
+    }
+    this.nodeCount = nodeCount;
+    this.nodeId = Objects.requireNonNull(nodeId);
+  }
+
+  /*
+   * Orders tentative nodes with the same estimated cost, see TieBreaking.
+   */
+  public void setTieBreaking(Comparator<NodeRecord<N, C>> tieBreaking) {
+    this.tieBreaking = tieBreaking;
+  }
 
-    // Cost from start along best known path.
-    Map<N, C> gScore = new HashMap<>();
-    gScore.put(startNode, startCost);
+  /*
+   * Limits the number of tentative nodes. When exceeded by a factor of two, only the given number of nodes with the
+   * lowest estimated cost are kept, so the search may no longer find the optimal solution.
+   */
+  public void setBeamWidth(int beamWidth) {
+    if (beamWidth < 0) {
+      throw new IllegalArgumentException("Beam width must not be negative: " + beamWidth);
+    }
+    this.beamWidth = beamWidth;
+  }
 
-    // Estimated total cost from start to goal through y.
-    final Map<N, C> fScore = new HashMap<>();
-    fScore.put(startNode, gScore.get(startNode).plus(heuristicCostEstimate(startNode)));
+  /*
+   * Limits the number of evaluated nodes. When exhausted, the search ends with budgetExhausted().
+   */
+  public void setNodeBudget(int nodeBudget) {
+    if (nodeBudget < 0) {
+      throw new IllegalArgumentException("Node budget must not be negative: " + nodeBudget);
+    }
+    this.nodeBudget = nodeBudget;
+  }
+
+  // The number of nodes evaluated by the last search
+  public int getExpandedNodes() {
+    return expandedNodes;
+  }
+
+  // The number of neighbor nodes generated by the last search
+  public int getGeneratedNodes() {
+    return generatedNodes;
+  }
+
+  // The number of evaluated nodes the last search had to evaluate again, because a cheaper path was found to them
+  public int getReopenedNodes() {
+    return reopenedNodes;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  protected List<N> aStar(N startNode, C startCost) {
+    records = (nodeCount == 0 ? new HashMap<>() : null);
+    recordsById = (nodeCount == 0 ? null : new NodeRecord[nodeCount]);
+    cameFrom = new CameFrom();
+    generatedRecords = 0;
+    expandedNodes = 0;
+    generatedNodes = 0;
+    reopenedNodes = 0;
 
     // The set of tentative nodes to be evaluated, initially containing the start node
-    Comparator<N> comp = new Comparator<N>() {
-      @Override
-      public int compare(N node0, N node1) {
-        return fScore.get(node0).compareTo(fScore.get(node1));
+    final OpenSet<N, C> open = new OpenSet<>(tieBreaking);
+    final NodeRecord<N, C> start = record(startNode);
+    start.cost = startCost;
+    start.estimate = startCost.plus(heuristicCostEstimate(startNode));
+    open.add(start);
+
+    while (!open.isEmpty()) {
+      if (nodeBudget > 0 && expandedNodes == nodeBudget) {
+        return budgetExhausted(open.peek().node);
       }
-    };
-    PriorityQueue<N> open = new PriorityQueue<N>(10, comp);
-    open.add(startNode);
-
-    while(!open.isEmpty()) {
-      N current = open.poll();
-      if (isGoal(current)) {
-        return reconstructPath(cameFrom, current);
+      final NodeRecord<N, C> current = open.poll();
+      if (isGoal(current.node)) {
+        return reconstructPath(current);
       }
-      closed.add(current);
-      for (N neighbor : neighborNodes(current)) {
-        if (closed.contains(neighbor)) {
+      current.heapIndex = NodeRecord.CLOSED;
+      expandedNodes++;
+      for (N neighbor : neighborNodes(current.node)) {
+        generatedNodes++;
+        final NodeRecord<N, C> record = record(neighbor);
+        final C tentativeCost = current.cost.plus(distBetween(current.node, neighbor));
+        if ((record.isOpen() || record.isClosed()) && tentativeCost.compareTo(record.cost) >= 0) {
           continue;
         }
-        C tentativeGScore = gScore.get(current).plus(distBetween(current, neighbor));
-        if (!open.contains(neighbor)||tentativeGScore.compareTo(gScore.get(neighbor))<0) {
-          cameFrom.put(neighbor, current);
-          gScore.put(neighbor, tentativeGScore);
-          fScore.put(neighbor, gScore.get(neighbor).plus(heuristicCostEstimate(neighbor)));
-          if (!open.contains(neighbor)) {
-            open.add(neighbor);
+        record.parent = current;
+        record.depth = current.depth + 1;
+        record.cost = tentativeCost;
+        record.estimate = tentativeCost.plus(heuristicCostEstimate(neighbor));
+        if (record.isOpen()) {
+          open.decreased(record);
+        } else {
+          if (record.isClosed()) {
+            reopenedNodes++;
           }
+          open.add(record);
         }
       }
+      if (beamWidth > 0 && open.size() > 2 * beamWidth) {
+        open.retainBest(beamWidth);
+      }
     }
     throw new IllegalStateException("No node found that suits goal condition!");
   }
 
+  /*
+   * Called with the tentative node of the lowest estimated cost when the node budget is exhausted; by default the search
+   * fails.
+   */
+  protected List<N> budgetExhausted(N best) {
+    throw new IllegalStateException("Node budget of " + nodeBudget + " exhausted before reaching the goal!");
+  }
+
+  /*
+   * The best known path from the start to a node reached by the last search.
+   */
+  protected List<N> reconstructPath(N node) {
+    return reconstructPath(record(node));
+  }
+
   protected List<N> reconstructPath(Map<N, N> cameFrom, N current) {
     ArrayList<N> path = new ArrayList<>();
     do {
@@ -78,6 +190,60 @@ public abstract class AstarAlgorithm<N, C extends Cost<C>> {
     return path;
   }
 
+  private List<N> reconstructPath(NodeRecord<N, C> record) {
+    final List<N> path = new ArrayList<>(record.depth + 1);
+    for (NodeRecord<N, C> current = record; current != null; current = current.parent) {
+      path.add(current.node);
+    }
+    Collections.reverse(path);
+    return path;
+  }
+
+  private NodeRecord<N, C> record(N node) {
+    if (recordsById == null) {
+      return records.computeIfAbsent(node, n -> new NodeRecord<>(n, generatedRecords++));
+    }
+    final int id = nodeId.applyAsInt(node);
+    NodeRecord<N, C> record = recordsById[id];
+    if (record == null) {
+      record = recordsById[id] = new NodeRecord<>(node, generatedRecords++);
+    }
+    return record;
+  }
+
+  // The record of a node reached by the last search, or null
+  private NodeRecord<N, C> find(N node) {
+    return (recordsById == null ? records.get(node) : recordsById[nodeId.applyAsInt(node)]);
+  }
+
+  private Stream<NodeRecord<N, C>> reached() {
+    return (recordsById == null ? records.values().stream() : Arrays.stream(recordsById).filter(Objects::nonNull));
+  }
+
+  // Maps every node reached by the last search, except the start node, to its predecessor on the best known path
+  private class CameFrom extends AbstractMap<N, N> {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public N get(Object key) {
+      final NodeRecord<N, C> record = find((N) key);
+      return (record == null || record.parent == null ? null : record.parent.node);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return get(key) != null;
+    }
+
+    @Override
+    public Set<Entry<N, N>> entrySet() {
+      return reached()
+          .filter(record -> record.parent != null)
+          .map(record -> new SimpleImmutableEntry<>(record.node, record.parent.node))
+          .collect(Collectors.toSet());
+    }
+  }
+
   protected abstract boolean isGoal(N node);
 
   protected abstract Iterable<N> neighborNodes(N current);
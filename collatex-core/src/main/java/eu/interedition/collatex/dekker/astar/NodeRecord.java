@@ -0,0 +1,60 @@
+package eu.interedition.collatex.dekker.astar;
+
+/*
+ * The search state of a node in the a* algorithm: the cost from the start
+ * along the best known path, the estimated total cost through the node, the
+ * predecessor on that path and the position of the node in the open set.
+ */
+public final class NodeRecord<N, C extends Cost<C>> {
+  // heap indices of nodes that are not in the open set
+  static final int NOT_OPEN = -1;
+  static final int CLOSED = -2;
+
+  final N node;
+  final long sequence;
+  NodeRecord<N, C> parent;
+  C cost;
+  C estimate;
+  int depth;
+  int heapIndex = NOT_OPEN;
+
+  NodeRecord(N node, long sequence) {
+    this.node = node;
+    this.sequence = sequence;
+  }
+
+  public N getNode() {
+    return node;
+  }
+
+  public C getCost() {
+    return cost;
+  }
+
+  public C getEstimate() {
+    return estimate;
+  }
+
+  // The number of nodes on the best known path from the start
+  public int getDepth() {
+    return depth;
+  }
+
+  // The order in which the node was first generated
+  public long getSequence() {
+    return sequence;
+  }
+
+  boolean isOpen() {
+    return heapIndex >= 0;
+  }
+
+  boolean isClosed() {
+    return heapIndex == CLOSED;
+  }
+
+  @Override
+  public String toString() {
+    return node + " (" + cost + ", " + estimate + ")";
+  }
+}
@@ -0,0 +1,110 @@
+package eu.interedition.collatex.dekker.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * The tentative nodes of the a* algorithm in a binary heap, ordered by their
+ * estimated total cost. Each node record knows its position in the heap, so
+ * membership tests are constant and decreasing the cost of a node is
+ * logarithmic.
+ */
+final class OpenSet<N, C extends Cost<C>> {
+  private final Comparator<NodeRecord<N, C>> order;
+  private NodeRecord<N, C>[] heap;
+  private int size;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  OpenSet(Comparator<NodeRecord<N, C>> tieBreaking) {
+    this.order = Comparator.<NodeRecord<N, C>, C>comparing(NodeRecord::getEstimate).thenComparing(tieBreaking);
+    this.heap = new NodeRecord[16];
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  NodeRecord<N, C> peek() {
+    return heap[0];
+  }
+
+  void add(NodeRecord<N, C> record) {
+    if (size == heap.length) {
+      heap = Arrays.copyOf(heap, size * 2);
+    }
+    place(record, size++);
+    siftUp(record.heapIndex);
+  }
+
+  NodeRecord<N, C> poll() {
+    final NodeRecord<N, C> top = heap[0];
+    final NodeRecord<N, C> last = heap[--size];
+    heap[size] = null;
+    if (size > 0) {
+      place(last, 0);
+      siftDown(0);
+    }
+    top.heapIndex = NodeRecord.NOT_OPEN;
+    return top;
+  }
+
+  // Restores the heap order after the estimated cost of an open node decreased
+  void decreased(NodeRecord<N, C> record) {
+    siftUp(record.heapIndex);
+  }
+
+  // Keeps the given number of nodes with the lowest estimated cost
+  void retainBest(int count) {
+    final List<NodeRecord<N, C>> best = new ArrayList<>(count);
+    while (best.size() < count && size > 0) {
+      best.add(poll());
+    }
+    for (int i = 0; i < size; i++) {
+      heap[i].heapIndex = NodeRecord.NOT_OPEN;
+      heap[i] = null;
+    }
+    size = 0;
+    best.forEach(this::add);
+  }
+
+  private void siftUp(int index) {
+    final NodeRecord<N, C> record = heap[index];
+    while (index > 0) {
+      final int parent = (index - 1) >>> 1;
+      if (order.compare(record, heap[parent]) >= 0) {
+        break;
+      }
+      place(heap[parent], index);
+      index = parent;
+    }
+    place(record, index);
+  }
+
+  private void siftDown(int index) {
+    final NodeRecord<N, C> record = heap[index];
+    final int half = size >>> 1;
+    while (index < half) {
+      int child = (index << 1) + 1;
+      if (child + 1 < size && order.compare(heap[child + 1], heap[child]) < 0) {
+        child++;
+      }
+      if (order.compare(record, heap[child]) <= 0) {
+        break;
+      }
+      place(heap[child], index);
+      index = child;
+    }
+    place(record, index);
+  }
+
+  private void place(NodeRecord<N, C> record, int index) {
+    heap[index] = record;
+    record.heapIndex = index;
+  }
+}
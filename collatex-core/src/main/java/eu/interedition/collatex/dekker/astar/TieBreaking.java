@@ -0,0 +1,28 @@
+package eu.interedition.collatex.dekker.astar;
+
+import java.util.Comparator;
+
+/*
+ * Orders of tentative nodes with the same estimated total cost, see
+ * AstarAlgorithm.setTieBreaking().
+ */
+public final class TieBreaking {
+
+  private TieBreaking() {
+  }
+
+  // Nodes generated first are evaluated first
+  public static <N, C extends Cost<C>> Comparator<NodeRecord<N, C>> fifo() {
+    return Comparator.comparingLong(NodeRecord::getSequence);
+  }
+
+  // Nodes generated last are evaluated first
+  public static <N, C extends Cost<C>> Comparator<NodeRecord<N, C>> lifo() {
+    return TieBreaking.<N, C>fifo().reversed();
+  }
+
+  // Nodes furthest from the start are evaluated first, which tends to reach a goal with fewer evaluations
+  public static <N, C extends Cost<C>> Comparator<NodeRecord<N, C>> deepestFirst() {
+    return Comparator.<NodeRecord<N, C>>comparingInt(NodeRecord::getDepth).reversed().thenComparing(fifo());
+  }
+}
@@ -36,22 +36,26 @@ public class Archipelago {
 
     private final List<Island> islands;
     private final Set<Integer> islandvectors;
+    // row -> column of the coordinates of all islands
+    private final Map<Integer, Integer> coordinates;
 
     public Archipelago() {
         islands = new ArrayList<>();
         this.islandvectors = new HashSet<>(); // row - column, all islands should have direction 1, so this diff should be the same for all coordinates on the island.
+        this.coordinates = new HashMap<>();
     }
 
     //copy constructor
     public Archipelago(Archipelago orig) {
         this.islands = new ArrayList<>(orig.islands);
         this.islandvectors = new HashSet<>(orig.islandvectors);
+        this.coordinates = new HashMap<>(orig.coordinates);
     }
 
     public void add(Island island) {
         islands.add(island);
-        Coordinate leftEnd = island.getLeftEnd();
-        islandvectors.add(leftEnd.row - leftEnd.column);
+        islandvectors.add(island.getLeftEndRow() - island.getLeftEndColumn());
+        addCoordinates(island);
     }
 
     public int size() {
@@ -63,7 +67,7 @@ public class Archipelago {
     }
 
     public boolean containsCoordinate(int row, int column) {
-        return Objects.equals(getCoordinatesMap().get(row), column);
+        return Objects.equals(coordinates.get(row), column);
     }
 
     public List<Island> getIslands() {
@@ -72,6 +76,8 @@ public class Archipelago {
 
     protected void remove(int i) {
         islands.remove(i);
+        coordinates.clear();
+        islands.forEach(this::addCoordinates);
     }
 
     @Override
@@ -103,14 +109,10 @@ public class Archipelago {
         return true;
     }
 
-    private Map<Integer, Integer> getCoordinatesMap() {
-        final Map<Integer, Integer> map = new HashMap<>();
-        for (final Island isl : islands) {
-            for (final Coordinate c : isl) {
-                map.put(c.getRow(), c.getColumn());
-            }
+    private void addCoordinates(Island island) {
+        for (int i = 0; i < island.size(); i++) {
+            coordinates.put(island.getLeftEndRow() + i, island.getColumn(i));
         }
-        return map;
     }
 
     public Set<Integer> getIslandVectors() {
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.interedition.collatex.dekker.island;
+
+import eu.interedition.collatex.dekker.astar.AstarAlgorithm;
+import eu.interedition.collatex.dekker.astar.Cost;
+import eu.interedition.collatex.dekker.astar.TieBreaking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Selects the islands aligning the most tokens of a witness by an A* search over the decisions to include or to skip
+ * each island.
+ * <p>
+ * Islands are decided on in order of size, largest first. Skipping an island costs its size, so the cheapest complete
+ * series of decisions aligns the most tokens. The remaining cost of a partial series is estimated by the size of the
+ * islands still to be decided on, less the number of rows they could still align; this never overestimates, so
+ * without limits the search finds an optimal selection among the subsets of non-conflicting whole islands.
+ * <p>
+ * Unlike the {@link IslandConflictResolver}, the search never trims an island partly overlapping the ones already
+ * included; such an island can only be skipped. Selections with trimmed islands are not considered, so they may align
+ * more tokens than the one found.
+ * <p>
+ * The search is bounded by a beam width and a node budget (see {@link AstarAlgorithm}). When the budget is exhausted,
+ * the most promising partial series of decisions is completed greedily, including every remaining island that does
+ * not conflict with the ones already included.
+ */
+public class AstarIslandSelection implements IslandSelectionStrategy {
+
+    public static final int DEFAULT_BEAM_WIDTH = 1000;
+    public static final int DEFAULT_NODE_BUDGET = 100000;
+
+    private final int beamWidth;
+    private final int nodeBudget;
+
+    public AstarIslandSelection() {
+        this(DEFAULT_BEAM_WIDTH, DEFAULT_NODE_BUDGET);
+    }
+
+    /*
+     * A beam width or node budget of 0 does not limit the search.
+     */
+    public AstarIslandSelection(int beamWidth, int nodeBudget) {
+        this.beamWidth = beamWidth;
+        this.nodeBudget = nodeBudget;
+    }
+
+    @Override
+    public List<Island> select(Set<Island> possibleIslands) {
+        final Island[] islands = possibleIslands.stream()
+            .filter(island -> island.size() > 0)
+            .sorted(new IslandSizeComparator()
+                .thenComparingDouble(Island::getDistanceToIdealLine)
+                .thenComparingInt(Island::getLeftEndRow)
+                .thenComparingInt(Island::getLeftEndColumn)
+                .thenComparingInt(Island::getRightEndColumn))
+            .toArray(Island[]::new);
+
+        final Search search = new Search(islands);
+        search.setBeamWidth(beamWidth);
+        search.setNodeBudget(nodeBudget);
+        search.setTieBreaking(TieBreaking.deepestFirst());
+        final Decision selection = search.run();
+
+        final List<Island> selected = new ArrayList<>(selection.included.cardinality());
+        for (int i = selection.included.nextSetBit(0); i >= 0; i = selection.included.nextSetBit(i + 1)) {
+            selected.add(islands[i]);
+        }
+        return selected;
+    }
+
+    // the first <code>decided</code> islands have been decided on, the ones in <code>included</code> are selected
+    static class Decision {
+        final int decided;
+        final BitSet included;
+        final CommittedCells cells;
+        final int committedRows;
+
+        Decision(int decided, BitSet included, CommittedCells cells, int committedRows) {
+            this.decided = decided;
+            this.included = included;
+            this.cells = cells;
+            this.committedRows = committedRows;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(decided, included);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Decision) {
+                final Decision other = (Decision) obj;
+                return decided == other.decided && included.equals(other.included);
+            }
+            return super.equals(obj);
+        }
+    }
+
+    static class SkippedTokens extends Cost<SkippedTokens> {
+        final int tokens;
+
+        SkippedTokens(int tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        protected SkippedTokens plus(SkippedTokens other) {
+            return new SkippedTokens(tokens + other.tokens);
+        }
+
+        @Override
+        public int compareTo(SkippedTokens o) {
+            return Integer.compare(tokens, o.tokens);
+        }
+    }
+
+    static class Search extends AstarAlgorithm<Decision, SkippedTokens> {
+        private final Island[] islands;
+        // the total size of the islands from a given index on
+        private final int[] remainingSize;
+        // the number of rows covered by any island
+        private final int rows;
+
+        Search(Island[] islands) {
+            this.islands = islands;
+            this.remainingSize = new int[islands.length + 1];
+            for (int i = islands.length - 1; i >= 0; i--) {
+                remainingSize[i] = remainingSize[i + 1] + islands[i].size();
+            }
+            final BitSet rows = new BitSet();
+            for (Island island : islands) {
+                rows.set(island.getLeftEndRow(), island.getRightEndRow() + 1);
+            }
+            this.rows = rows.cardinality();
+        }
+
+        Decision run() {
+            final List<Decision> path = aStar(new Decision(0, new BitSet(), new CommittedCells(), 0), new SkippedTokens(0));
+            return path.get(path.size() - 1);
+        }
+
+        @Override
+        protected boolean isGoal(Decision node) {
+            return node.decided == islands.length;
+        }
+
+        @Override
+        protected Iterable<Decision> neighborNodes(Decision current) {
+            final Decision skip = skip(current);
+            final Decision include = include(current);
+            return (include == null ? Collections.singletonList(skip) : Arrays.asList(include, skip));
+        }
+
+        @Override
+        protected SkippedTokens heuristicCostEstimate(Decision node) {
+            return new SkippedTokens(Math.max(0, remainingSize[node.decided] - (rows - node.committedRows)));
+        }
+
+        @Override
+        protected SkippedTokens distBetween(Decision current, Decision neighbor) {
+            return new SkippedTokens(neighbor.included.get(current.decided) ? 0 : islands[current.decided].size());
+        }
+
+        @Override
+        protected List<Decision> budgetExhausted(Decision best) {
+            final List<Decision> path = reconstructPath(best);
+            Decision current = best;
+            while (!isGoal(current)) {
+                final Decision include = include(current);
+                current = (include == null ? skip(current) : include);
+                path.add(current);
+            }
+            return path;
+        }
+
+        private Decision skip(Decision current) {
+            return new Decision(current.decided + 1, current.included, current.cells, current.committedRows);
+        }
+
+        // null if the next island conflicts with the included ones
+        private Decision include(Decision current) {
+            final Island island = islands[current.decided];
+            if (current.cells.overlaps(island)) {
+                return null;
+            }
+            final BitSet included = (BitSet) current.included.clone();
+            included.set(current.decided);
+            final CommittedCells cells = new CommittedCells(current.cells);
+            cells.commit(island);
+            return new Decision(current.decided + 1, included, cells, current.committedRows + island.size());
+        }
+    }
+}
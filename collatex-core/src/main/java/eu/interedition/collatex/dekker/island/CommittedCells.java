@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.interedition.collatex.dekker.island;
+
+import eu.interedition.collatex.VariantGraph;
+
+import java.util.BitSet;
+
+/**
+ * The cells of a match table taken by committed islands: their rows, their columns and the ids of their vertices, kept
+ * in bitsets.
+ * <p>
+ * A candidate island overlaps with the committed islands if one of its rows is committed, or if one of its vertices is.
+ * Rows of an island are consecutive, so the former is a range query. Vertices can only be committed in committed
+ * columns, so vertices are only looked up for islands whose column range contains a committed column.
+ */
+public class CommittedCells {
+    private final BitSet rows;
+    private final BitSet columns;
+    private final BitSet vertices;
+
+    public CommittedCells() {
+        this.rows = new BitSet();
+        this.columns = new BitSet();
+        this.vertices = new BitSet();
+    }
+
+    //copy constructor
+    public CommittedCells(CommittedCells orig) {
+        this.rows = (BitSet) orig.rows.clone();
+        this.columns = (BitSet) orig.columns.clone();
+        this.vertices = (BitSet) orig.vertices.clone();
+    }
+
+    public void commit(Island island) {
+        if (island.size() == 0) {
+            return;
+        }
+        rows.set(island.getLeftEndRow(), island.getRightEndRow() + 1);
+        for (int i = 0; i < island.size(); i++) {
+            final VariantGraph.Vertex vertex = island.getVertex(i);
+            if (vertex != null) {
+                columns.set(island.getColumn(i));
+                vertices.set(vertex.id());
+            }
+        }
+    }
+
+    public boolean isCommitted(int row, VariantGraph.Vertex vertex) {
+        return rows.get(row) || isCommitted(vertex);
+    }
+
+    // cells without a vertex commit none
+    private boolean isCommitted(VariantGraph.Vertex vertex) {
+        return vertex != null && vertices.get(vertex.id());
+    }
+
+    public boolean isCommitted(Island island, int i) {
+        return isCommitted(island.getLeftEndRow() + i, island.getVertex(i));
+    }
+
+    /*
+     * Return the index of the first coordinate of an island overlapping with a committed cell, or the size of the island
+     * if there is none
+     */
+    public int firstOverlap(Island island) {
+        if (island.size() == 0) {
+            return 0;
+        }
+        final int row = rows.nextSetBit(island.getLeftEndRow());
+        final int rowOverlap = (row < 0 || row > island.getRightEndRow() ? island.size() : row - island.getLeftEndRow());
+        final int column = columns.nextSetBit(island.getLeftEndColumn());
+        if (column < 0 || column > island.getRightEndColumn()) {
+            return rowOverlap;
+        }
+        for (int i = 0; i < rowOverlap; i++) {
+            if (columns.get(island.getColumn(i)) && isCommitted(island.getVertex(i))) {
+                return i;
+            }
+        }
+        return rowOverlap;
+    }
+
+    public boolean overlaps(Island island) {
+        return firstOverlap(island) < island.size();
+    }
+}
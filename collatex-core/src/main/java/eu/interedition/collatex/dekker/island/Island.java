@@ -20,31 +20,70 @@
 package eu.interedition.collatex.dekker.island;
 
 import eu.interedition.collatex.Token;
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.dekker.Match;
 import eu.interedition.collatex.dekker.token_index.Block;
 import eu.interedition.collatex.simple.SimpleToken;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
+/**
+ * A diagonal run of matches in the match table: the island matches <code>size</code> consecutive tokens of the witness,
+ * starting in <code>row</code>, with as many vertices of consecutive tokens in the graph, whose ranks are the columns.
+ * <p>
+ * Tokens, vertices and columns are kept as slices of arrays, which the islands of one witness share. Coordinates are
+ * only created when iterating over an island; ends, containment and competition are determined from the slices.
+ */
 public class Island implements Iterable<Coordinate> {
 
-    private final List<Coordinate> islandCoordinates = new ArrayList<>();
     private final Block.Instance blockInstance;
 
+    private int row;
+    private int size;
+
+    // tokens[tokenOffset + i] is matched with vertices[vertexOffset + i] in column columns[vertexOffset + i]
+    private Token[] tokens;
+    private int tokenOffset;
+    private VariantGraph.Vertex[] vertices;
+    private int[] columns;
+    private int vertexOffset;
+
+    // whether the arrays are shared with other islands and have to be copied before adding coordinates
+    private boolean shared;
+
+    // cached, see getDistanceToIdealLine()
+    private double distanceToIdealLine = Double.NaN;
+
+    public Island(Block.Instance blockInstance, int row, int size, Token[] tokens, int tokenOffset, VariantGraph.Vertex[] vertices, int[] columns, int vertexOffset) {
+        this.blockInstance = blockInstance;
+        this.row = row;
+        this.size = size;
+        this.tokens = tokens;
+        this.tokenOffset = tokenOffset;
+        this.vertices = vertices;
+        this.columns = columns;
+        this.vertexOffset = vertexOffset;
+        this.shared = true;
+    }
+
     public Island(Block.Instance blockInstance) {
         this.blockInstance = blockInstance;
+        this.tokens = new Token[0];
+        this.vertices = new VariantGraph.Vertex[0];
+        this.columns = new int[0];
     }
 
     // for legacy code
     public Island() {
-        blockInstance = null;
+        this((Block.Instance) null);
     }
 
     // for legacy code
     public Island(Coordinate first, Coordinate last) {
-        blockInstance = null;
+        this();
         add(first);
         Coordinate newCoordinate = first;
         while (!newCoordinate.equals(last)) {
@@ -54,12 +93,61 @@ public class Island implements Iterable<Coordinate> {
         }
     }
 
+    /*
+     * Extends the island at its right end; the coordinate has to be in the next row and in a column to the right
+     */
     public void add(Coordinate coordinate) {
-        islandCoordinates.add(coordinate);
+        if (size > 0 && (coordinate.row != row + size || coordinate.column <= getColumn(size - 1))) {
+            throw new IllegalArgumentException("Coordinate " + coordinate + " does not extend island " + getLeftEnd() + "-" + getRightEnd());
+        }
+        if (size == 0) {
+            row = coordinate.row;
+            distanceToIdealLine = Double.NaN;
+        }
+        if (shared || vertexOffset + size == vertices.length || tokenOffset + size == tokens.length) {
+            final int capacity = Math.max(4, size * 2);
+            tokens = Arrays.copyOfRange(tokens, tokenOffset, tokenOffset + capacity);
+            vertices = Arrays.copyOfRange(vertices, vertexOffset, vertexOffset + capacity);
+            columns = Arrays.copyOfRange(columns, vertexOffset, vertexOffset + capacity);
+            tokenOffset = 0;
+            vertexOffset = 0;
+            shared = false;
+        }
+        final Match match = coordinate.match;
+        tokens[tokenOffset + size] = (match == null ? null : match.token);
+        vertices[vertexOffset + size] = (match == null ? null : match.vertex);
+        columns[vertexOffset + size] = coordinate.column;
+        size++;
     }
 
+    /*
+     * Removes one of the ends of the island
+     */
     public void removeCoordinate(Coordinate c) {
-        islandCoordinates.remove(c);
+        if (!contains(c)) {
+            return;
+        }
+        if (c.row == row) {
+            row++;
+            tokenOffset++;
+            vertexOffset++;
+            distanceToIdealLine = Double.NaN;
+        } else if (c.row != row + size - 1) {
+            throw new IllegalArgumentException("Only the ends of an island can be removed: " + c);
+        }
+        size--;
+    }
+
+    /*
+     * The island made up of the first given number of coordinates of this island
+     */
+    public Island head(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IndexOutOfBoundsException(Integer.toString(size));
+        }
+        final Island head = new Island(blockInstance, row, size, tokens, tokenOffset, vertices, columns, vertexOffset);
+        shared = true;
+        return head;
     }
 
     /**
@@ -67,46 +155,151 @@ public class Island implements Iterable<Coordinate> {
      * vertical line which goes through both islands
      */
     public boolean isCompetitor(Island isl) {
-        for (Coordinate c : isl) {
-            for (Coordinate d : islandCoordinates) {
-                if (c.sameColumn(d) || c.sameRow(d)) return true;
+        if (size == 0 || isl.size == 0) {
+            return false;
+        }
+        // rows are consecutive, so they form an interval
+        if (row <= isl.getRightEndRow() && isl.row <= getRightEndRow()) {
+            return true;
+        }
+        // columns are ascending; islands whose column ranges are disjoint do not compete
+        if (getRightEndColumn() < isl.getLeftEndColumn() || isl.getRightEndColumn() < getLeftEndColumn()) {
+            return false;
+        }
+        // an island with consecutive columns competes with islands having a column in its range
+        if (isDiagonal()) {
+            return isl.hasColumnBetween(getLeftEndColumn(), getRightEndColumn());
+        }
+        if (isl.isDiagonal()) {
+            return hasColumnBetween(isl.getLeftEndColumn(), isl.getRightEndColumn());
+        }
+        // otherwise look for a common column
+        for (int i = 0, j = 0; i < size && j < isl.size; ) {
+            final int column = getColumn(i);
+            final int other = isl.getColumn(j);
+            if (column == other) {
+                return true;
+            } else if (column < other) {
+                i++;
+            } else {
+                j++;
             }
         }
         return false;
     }
 
     public boolean contains(Coordinate c) {
-        return islandCoordinates.contains(c);
+        final int i = c.row - row;
+        return (i >= 0 && i < size && getColumn(i) == c.column);
     }
 
     public Coordinate getLeftEnd() {
-        Coordinate coor = islandCoordinates.get(0);
-        for (Coordinate c : islandCoordinates) {
-            if (c.column < coor.column) coor = c;
-        }
-        return coor;
+        return getCoordinate(0);
     }
 
     public Coordinate getRightEnd() {
-        Coordinate coor = islandCoordinates.get(0);
-        for (Coordinate c : islandCoordinates) {
-            if (c.column > coor.column) coor = c;
+        return getCoordinate(size - 1);
+    }
+
+    public int getLeftEndRow() {
+        return row;
+    }
+
+    public int getLeftEndColumn() {
+        return getColumn(0);
+    }
+
+    public int getRightEndRow() {
+        return row + size - 1;
+    }
+
+    public int getRightEndColumn() {
+        return getColumn(size - 1);
+    }
+
+    /*
+     * The distance of the left end from the ideal line through the origin of the match table, as the absolute binary
+     * logarithm of the ratio of its column and row
+     */
+    public double getDistanceToIdealLine() {
+        if (Double.isNaN(distanceToIdealLine)) {
+            double ratio = ((getLeftEndColumn() + 1) / (double) (getLeftEndRow() + 1));
+            distanceToIdealLine = Math.abs(Math.log(ratio) / Math.log(2));
+        }
+        return distanceToIdealLine;
+    }
+
+    public int getColumn(int i) {
+        return columns[vertexOffset + checkIndex(i)];
+    }
+
+    public VariantGraph.Vertex getVertex(int i) {
+        return vertices[vertexOffset + checkIndex(i)];
+    }
+
+    public Token getToken(int i) {
+        return tokens[tokenOffset + checkIndex(i)];
+    }
+
+    /*
+     * The i-th coordinate from the left end, created on demand
+     */
+    public Coordinate getCoordinate(int i) {
+        final Token token = getToken(i);
+        final VariantGraph.Vertex vertex = getVertex(i);
+        return new Coordinate(row + i, getColumn(i), (token == null && vertex == null ? null : new Match(vertex, token)));
+    }
+
+    // whether the columns of the island are consecutive, like its rows
+    public boolean isDiagonal() {
+        return getRightEndColumn() - getLeftEndColumn() == size - 1;
+    }
+
+    private boolean hasColumnBetween(int from, int to) {
+        final int found = Arrays.binarySearch(columns, vertexOffset, vertexOffset + size, from);
+        final int next = (found < 0 ? -(found + 1) : found);
+        return next < vertexOffset + size && columns[next] <= to;
+    }
+
+    private int checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(i));
         }
-        return coor;
+        return i;
     }
 
     public int size() {
-        return islandCoordinates.size();
+        return size;
     }
 
     @Override
     public Iterator<Coordinate> iterator() {
-        return Collections.unmodifiableList(islandCoordinates).iterator();
+        return new Iterator<Coordinate>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < size;
+            }
+
+            @Override
+            public Coordinate next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getCoordinate(i++);
+            }
+        };
     }
 
     @Override
     public int hashCode() {
-        return islandCoordinates.hashCode();
+        // the hash code of the list of coordinates
+        int hashCode = 1;
+        for (int i = 0; i < size; i++) {
+            hashCode = 31 * hashCode + (31 * (31 + row + i) + getColumn(i));
+        }
+        return hashCode;
     }
 
     @Override
@@ -117,12 +310,13 @@ public class Island implements Iterable<Coordinate> {
 
         Island isl = (Island) obj;
         if (isl.size() != size()) return false;
+        if (size == 0) return true;
+        if (isl.row != row) return false;
 
-        boolean result = true;
-        for (Coordinate c : isl) {
-            result &= this.contains(c);
+        for (int i = 0; i < size; i++) {
+            if (isl.getColumn(i) != getColumn(i)) return false;
         }
-        return result;
+        return true;
     }
 
     public Block.Instance getBlockInstance() {
@@ -19,7 +19,6 @@
 
 package eu.interedition.collatex.dekker.island;
 
-import eu.interedition.collatex.VariantGraph;
 
 import java.util.*;
 import java.util.logging.Level;
@@ -34,14 +33,12 @@ public class IslandCollection implements IslandSelection {
     Logger LOG = Logger.getLogger(IslandCollection.class.getName());
     private final PriorityQueue<Island> islandPriorityQueue;
     private final Archipelago fixedIslands;
-    //this fields are needed for the locking of table cells
-    private final BitSet fixedRows;
-    private final Set<VariantGraph.Vertex> fixedVertices;
+    //this field is needed for the locking of table cells
+    private final CommittedCells fixedCells;
     private final Comparator<Island> comparator = new IslandSizeComparator();
 
     public IslandCollection(Set<Island> islands) {
-        fixedRows = new BitSet();
-        fixedVertices = new HashSet<>();
+        fixedCells = new CommittedCells();
         this.fixedIslands = new Archipelago();
         islandPriorityQueue = new PriorityQueue<>(comparator);
         islandPriorityQueue.addAll(islands);
@@ -52,7 +49,7 @@ public class IslandCollection implements IslandSelection {
      */
     @Override
     public boolean doesCoordinateOverlapWithCommittedCoordinate(Coordinate coordinate) {
-        return fixedRows.get(coordinate.row) || fixedVertices.contains(coordinate.match.vertex);
+        return fixedCells.isCommitted(coordinate.row, coordinate.match.vertex);
     }
 
     /*
@@ -60,10 +57,7 @@ public class IslandCollection implements IslandSelection {
      */
     @Override
     public boolean isIslandPossibleCandidate(Island island) {
-        for (Coordinate coordinate : island) {
-            if (doesCoordinateOverlapWithCommittedCoordinate(coordinate)) return false;
-        }
-        return true;
+        return !fixedCells.overlaps(island);
     }
 
     /*
@@ -75,17 +69,13 @@ public class IslandCollection implements IslandSelection {
         if (LOG.isLoggable(Level.FINE)) {
             LOG.log(Level.FINE, "adding island: '{0}'", isl);
         }
-        for (Coordinate coordinate : isl) {
-            fixedRows.set(coordinate.row);
-            fixedVertices.add(coordinate.match.vertex);
-        }
+        fixedCells.commit(isl);
         fixedIslands.add(isl);
     }
 
     @Override
     public boolean doesCandidateLayOnVectorOfCommittedIsland(Island island) {
-        Coordinate leftEnd = island.getLeftEnd();
-        return fixedIslands.getIslandVectors().contains(leftEnd.row - leftEnd.column);
+        return fixedIslands.getIslandVectors().contains(island.getLeftEndRow() - island.getLeftEndColumn());
     }
 
     @Override
@@ -137,12 +127,12 @@ public class IslandCollection implements IslandSelection {
             Island island = candidates.next();
             // check whether there is complete overlap
             // if left end coordinate is not available there is no use in checking this island any longer
-            if (doesCoordinateOverlapWithCommittedCoordinate(island.getLeftEnd())) {
+            if (fixedCells.isCommitted(island, 0)) {
                 candidates.remove();
                 continue;
             }
             // if right end coordinate is also available it means the whole island is available
-            if (!doesCoordinateOverlapWithCommittedCoordinate(island.getRightEnd())) {
+            if (!fixedCells.isCommitted(island, island.size() - 1)) {
                 // no further check necessary
                 continue;
             }
@@ -158,12 +148,9 @@ public class IslandCollection implements IslandSelection {
 
     private Island findConflictingCoordinateAndCreateSmallerIslandSplitAtConflictingCoordinate(Island island){
         // create a new island which contains the coordinates up to the overlapping coordinate.
-        Island smaller = new Island(island.getBlockInstance());
-        for (Coordinate coordinate : island) {
-            if (doesCoordinateOverlapWithCommittedCoordinate(coordinate)) {
-                return smaller;
-            }
-            smaller.add(coordinate);
+        int overlap = fixedCells.firstOverlap(island);
+        if (overlap < island.size()) {
+            return island.head(overlap);
         }
         throw new RuntimeException("Expected a conflict! This should never happen!");
     }
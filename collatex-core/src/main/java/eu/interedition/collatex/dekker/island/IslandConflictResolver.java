@@ -20,16 +20,17 @@
 package eu.interedition.collatex.dekker.island;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.function.ToIntFunction;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 /**
  * @author Ronald Haentjens Dekker
@@ -98,16 +99,14 @@ public class IslandConflictResolver {
     private void resolveConflictsBySelectingPreferredIslands(IslandSelection selection, Map<IslandCompetition, List<Island>> islandConflictMap) {
         // First select competing islands that are on the ideal line
         LOG.fine("addBestOfCompeting with competingIslandsOnIdealLine");
-        makeDistanceMap(islandConflictMap.getOrDefault(IslandCompetition.CompetingIslandAndOnIdealIine, Collections.emptyList()))
-            .values().stream()
-            .flatMap(List::stream).filter(ci1 -> selection.isIslandPossibleCandidate(ci1))
+        sortByDistanceToIdealLine(islandConflictMap.getOrDefault(IslandCompetition.CompetingIslandAndOnIdealIine, Collections.emptyList()))
+            .stream().filter(ci1 -> selection.isIslandPossibleCandidate(ci1))
             .forEach(selection::addIsland);
 
         // Second select other competing islands
         LOG.fine("addBestOfCompeting with otherCompetingIslands");
-        makeDistanceMap(islandConflictMap.getOrDefault(IslandCompetition.CompetingIsland, Collections.emptyList()))
-            .values().stream()
-            .flatMap(List::stream).filter(ci -> selection.isIslandPossibleCandidate(ci))
+        sortByDistanceToIdealLine(islandConflictMap.getOrDefault(IslandCompetition.CompetingIsland, Collections.emptyList()))
+            .stream().filter(ci -> selection.isIslandPossibleCandidate(ci))
             .forEach(selection::addIsland);
 
         // Third select non competing islands
@@ -116,19 +115,13 @@ public class IslandConflictResolver {
             .forEach(selection::addIsland);
     }
 
-    // TODO: This method calculates the distance from the ideal line
-    // TODO: by calculating the ratio x/y.
+    // TODO: The distance from the ideal line is calculated
+    // TODO: by the ratio x/y of the left end of an island.
     // TODO: but the ideal line may have moved (due to additions/deletions).
-    private SortedMap<Double, List<Island>> makeDistanceMap(Collection<Island> competingIslands) {
-        SortedMap<Double, List<Island>> distanceMap = new TreeMap<>();
-        for (Island isl : competingIslands) {
-            Coordinate leftEnd = isl.getLeftEnd();
-            double ratio = ((leftEnd.column + 1) / (double) (leftEnd.row + 1));
-            double b2 = Math.log(ratio) / Math.log(2);
-            double distanceToIdealLine = Math.abs(b2);
-            distanceMap.computeIfAbsent(distanceToIdealLine, d -> new ArrayList<>()).add(isl);
-        }
-        return distanceMap;
+    // The sort is stable, so islands at the same distance keep their order, and the distances are cached by the islands.
+    private List<Island> sortByDistanceToIdealLine(List<Island> competingIslands) {
+        competingIslands.sort(Comparator.comparingDouble(Island::getDistanceToIdealLine));
+        return competingIslands;
     }
 
     private Set<Island> getNonCompetingIslands(List<Island> islands, Set<Island> competingIslands) {
@@ -137,18 +130,91 @@ public class IslandConflictResolver {
         return nonCompetingIslands;
     }
 
+    /*
+     * Islands compete if they share a row or a column. Rows, and the columns of most islands, are intervals, so
+     * competitors are found by sorting intervals by their start: an interval overlaps another one if it starts before
+     * the end of a preceding interval, or if the following interval starts before its own end.
+     */
     private Set<Island> getCompetingIslands(List<Island> islands) {
-        Set<Island> competingIslands = new HashSet<>();
-        for (int i = 0; i < islands.size(); i++) {
-            Island i1 = islands.get(i);
-            for (int j = 1; j < islands.size() - i; j++) {
-                Island i2 = islands.get(i + j);
-                if (i1.isCompetitor(i2)) {
-                    competingIslands.add(i1);
-                    competingIslands.add(i2);
+        final Island[] candidates = islands.stream().filter(island -> island.size() > 0).toArray(Island[]::new);
+        final boolean[] competing = new boolean[candidates.length];
+
+        final int[] all = IntStream.range(0, candidates.length).toArray();
+        markOverlappingIntervals(candidates, all, Island::getLeftEndRow, Island::getRightEndRow, competing);
+
+        final int[] diagonal = IntStream.range(0, candidates.length).filter(c -> candidates[c].isDiagonal()).toArray();
+        markOverlappingIntervals(candidates, diagonal, Island::getLeftEndColumn, Island::getRightEndColumn, competing);
+
+        // islands with gaps between their columns are compared with every island whose column range overlaps theirs
+        if (diagonal.length < candidates.length) {
+            final int[] byLeftColumn = sortByStart(candidates, all, Island::getLeftEndColumn);
+            final int[] leftColumns = Arrays.stream(byLeftColumn).map(c -> candidates[c].getLeftEndColumn()).toArray();
+            int maxColumnRange = 0;
+            for (Island candidate : candidates) {
+                maxColumnRange = Math.max(maxColumnRange, candidate.getRightEndColumn() - candidate.getLeftEndColumn());
+            }
+            for (int c = 0; c < candidates.length; c++) {
+                final Island island = candidates[c];
+                if (island.isDiagonal()) {
+                    continue;
+                }
+                final int from = firstIndexOf(leftColumns, island.getLeftEndColumn() - maxColumnRange);
+                final int to = firstIndexOf(leftColumns, island.getRightEndColumn() + 1);
+                for (int o = from; o < to; o++) {
+                    final int other = byLeftColumn[o];
+                    if (other != c && island.isCompetitor(candidates[other])) {
+                        competing[c] = true;
+                        competing[other] = true;
+                    }
                 }
             }
         }
+
+        final Set<Island> competingIslands = new HashSet<>();
+        for (int c = 0; c < candidates.length; c++) {
+            if (competing[c]) {
+                competingIslands.add(candidates[c]);
+            }
+        }
         return competingIslands;
     }
+
+    private static void markOverlappingIntervals(Island[] candidates, int[] subset, ToIntFunction<Island> start, ToIntFunction<Island> end, boolean[] overlapping) {
+        final int[] sorted = sortByStart(candidates, subset, start);
+        int maxEnd = Integer.MIN_VALUE;
+        for (int i = 0; i < sorted.length; i++) {
+            final Island island = candidates[sorted[i]];
+            if (start.applyAsInt(island) <= maxEnd) {
+                overlapping[sorted[i]] = true;
+            }
+            if (i + 1 < sorted.length && start.applyAsInt(candidates[sorted[i + 1]]) <= end.applyAsInt(island)) {
+                overlapping[sorted[i]] = true;
+            }
+            maxEnd = Math.max(maxEnd, end.applyAsInt(island));
+        }
+    }
+
+    private static int[] sortByStart(Island[] candidates, int[] subset, ToIntFunction<Island> start) {
+        final long[] keys = new long[subset.length];
+        for (int i = 0; i < subset.length; i++) {
+            keys[i] = ((long) start.applyAsInt(candidates[subset[i]]) << 32) | subset[i];
+        }
+        Arrays.sort(keys);
+        return Arrays.stream(keys).mapToInt(key -> (int) key).toArray();
+    }
+
+    // index of the first value not less than the given one in a sorted array
+    private static int firstIndexOf(int[] sorted, int value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package eu.interedition.collatex.dekker.island;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Selects the islands making up the alignment of a witness with the variant graph from all possible islands, such that
+ * no two selected islands share a row, i.e. a token of the witness, or a vertex of the graph.
+ *
+ * @see eu.interedition.collatex.dekker.DekkerAlgorithm#setIslandSelectionStrategy(IslandSelectionStrategy)
+ */
+public interface IslandSelectionStrategy {
+
+    List<Island> select(Set<Island> possibleIslands);
+
+    /*
+     * Largest islands first; conflicts between islands of the same size are resolved by their distance to the ideal
+     * line, see IslandConflictResolver.
+     */
+    static IslandSelectionStrategy greedy() {
+        return possibleIslands -> new IslandConflictResolver(new IslandCollection(possibleIslands)).createNonConflictingVersion().getIslands();
+    }
+
+    /*
+     * Islands aligning the most tokens, searched for within the given limits, see AstarIslandSelection.
+     */
+    static IslandSelectionStrategy astar(int beamWidth, int nodeBudget) {
+        return new AstarIslandSelection(beamWidth, nodeBudget);
+    }
+}
@@ -39,7 +39,7 @@ public class MatchTableLinker {
     public Map<Token, VariantGraph.Vertex> link(VariantGraph base, Iterable<Token> witness, Comparator<Token> comparator) {
         // create MatchTable and fill it with matches
         LOG.fine("create MatchTable and fill it with matches");
-        MatchTable table = MatchTableImpl.create(base, witness, comparator);
+        MatchTable table = SparseMatchTable.create(base, witness, comparator);
 
         // create IslandConflictResolver
         LOG.fine("create island conflict resolver");
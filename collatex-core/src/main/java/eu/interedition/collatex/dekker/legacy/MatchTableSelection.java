@@ -18,8 +18,8 @@
  */
 package eu.interedition.collatex.dekker.legacy;
 
-import eu.interedition.collatex.VariantGraph;
 import eu.interedition.collatex.dekker.island.Archipelago;
+import eu.interedition.collatex.dekker.island.CommittedCells;
 import eu.interedition.collatex.dekker.island.Coordinate;
 import eu.interedition.collatex.dekker.island.Island;
 import eu.interedition.collatex.dekker.island.IslandSelection;
@@ -28,10 +28,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -45,14 +43,12 @@ public class MatchTableSelection implements IslandSelection {
     Logger LOG = Logger.getLogger(MatchTableSelection.class.getName());
     private final Map<Integer, List<Island>> islandMultimap;
     private final Archipelago fixedIslands;
-    //this fields are needed for the locking of table cells
-    private final Set<Integer> fixedRows;
-    private final Set<VariantGraph.Vertex> fixedVertices;
+    //this field is needed for the locking of table cells
+    private final CommittedCells fixedCells;
     private final MatchTable table;
 
     public MatchTableSelection(MatchTable table) {
-        fixedRows = new HashSet<>();
-        fixedVertices = new HashSet<>();
+        fixedCells = new CommittedCells();
         this.table = table;
         this.fixedIslands = new Archipelago();
         islandMultimap = new HashMap<>();
@@ -66,8 +62,7 @@ public class MatchTableSelection implements IslandSelection {
         // table structure is read only, does not have to be copied
         this.islandMultimap = orig.islandMultimap.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> new ArrayList<>(e.getValue())));
         this.fixedIslands = new Archipelago(orig.fixedIslands);
-        this.fixedRows = new HashSet<>(orig.fixedRows);
-        this.fixedVertices = new HashSet<>(orig.fixedVertices);
+        this.fixedCells = new CommittedCells(orig.fixedCells);
         this.table = orig.table;
     }
 
@@ -75,18 +70,14 @@ public class MatchTableSelection implements IslandSelection {
      * Return whether a coordinate overlaps with an already committed coordinate
      */
     public boolean doesCoordinateOverlapWithCommittedCoordinate(Coordinate coordinate) {
-        return fixedRows.contains(coordinate.row) || //
-            fixedVertices.contains(table.vertexAt(coordinate.row, coordinate.column));
+        return fixedCells.isCommitted(coordinate.row, table.vertexAt(coordinate.row, coordinate.column));
     }
 
     /*
      * Return whether an island overlaps with an already committed island
      */
     public boolean isIslandPossibleCandidate(Island island) {
-        for (Coordinate coordinate : island) {
-            if (doesCoordinateOverlapWithCommittedCoordinate(coordinate)) return false;
-        }
-        return true;
+        return !fixedCells.overlaps(island);
     }
 
     /*
@@ -97,10 +88,7 @@ public class MatchTableSelection implements IslandSelection {
         if (LOG.isLoggable(Level.FINE)) {
             LOG.log(Level.FINE, "adding island: '{0}'", isl);
         }
-        for (Coordinate coordinate : isl) {
-            fixedRows.add(coordinate.row);
-            fixedVertices.add(table.vertexAt(coordinate.row, coordinate.column));
-        }
+        fixedCells.commit(isl);
         fixedIslands.add(isl);
         islandMultimap.computeIfPresent(isl.size(), (s, i) -> {
             i.remove(isl);
@@ -109,8 +97,7 @@ public class MatchTableSelection implements IslandSelection {
     }
 
     public boolean doesCandidateLayOnVectorOfCommittedIsland(Island island) {
-        Coordinate leftEnd = island.getLeftEnd();
-        return fixedIslands.getIslandVectors().contains(leftEnd.row - leftEnd.column);
+        return fixedIslands.getIslandVectors().contains(island.getLeftEndRow() - island.getLeftEndColumn());
     }
 
     public int size() {
@@ -153,9 +140,8 @@ public class MatchTableSelection implements IslandSelection {
     private void removeConflictingEndCoordinates(Island island) {
         boolean goOn = true;
         while (goOn) {
-            Coordinate leftEnd = island.getLeftEnd();
-            if (doesCoordinateOverlapWithCommittedCoordinate(leftEnd)) {
-                island.removeCoordinate(leftEnd);
+            if (fixedCells.isCommitted(island, 0)) {
+                island.removeCoordinate(island.getLeftEnd());
                 if (island.size() == 0) {
                     return;
                 }
@@ -165,9 +151,8 @@ public class MatchTableSelection implements IslandSelection {
         }
         goOn = true;
         while (goOn) {
-            Coordinate rightEnd = island.getRightEnd();
-            if (doesCoordinateOverlapWithCommittedCoordinate(rightEnd)) {
-                island.removeCoordinate(rightEnd);
+            if (fixedCells.isCommitted(island, island.size() - 1)) {
+                island.removeCoordinate(island.getRightEnd());
                 if (island.size() == 0) {
                     return;
                 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.dekker.legacy;
+
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.dekker.island.Island;
+import eu.interedition.collatex.matching.EqualityTokenComparator;
+import eu.interedition.collatex.matching.Matches;
+import eu.interedition.collatex.util.VariantGraphRanking;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A match table storing only its matches, like {@link MatchTableImpl} in every other respect.
+ * <p>
+ * The matches of every row are a slice of ascending columns and their vertices in shared arrays. Tokens of the witness
+ * matching the same vertices share one slice. Islands are the diagonal runs of matches; they are found in a single pass
+ * over the rows, which links every match to the one above and to its left, and are laid out run by run in arrays the
+ * islands share.
+ */
+public class SparseMatchTable implements MatchTable {
+
+    private final Token[] witness;
+    private final int[] ranks;
+
+    // the matches of row r are stored in columns and vertices from rowStart[r] up to rowEnd[r]
+    private final int[] rowStart;
+    private final int[] rowEnd;
+    private final int[] columns;
+    private final VariantGraph.Vertex[] vertices;
+
+    private SparseMatchTable(Token[] witness, int[] ranks, int[] rowStart, int[] rowEnd, int[] columns, VariantGraph.Vertex[] vertices) {
+        this.witness = witness;
+        this.ranks = ranks;
+        this.rowStart = rowStart;
+        this.rowEnd = rowEnd;
+        this.columns = columns;
+        this.vertices = vertices;
+    }
+
+    // assumes default token comparator
+    public static SparseMatchTable create(VariantGraph graph, Iterable<Token> witness) {
+        return create(graph, witness, new EqualityTokenComparator());
+    }
+
+    public static SparseMatchTable create(VariantGraph graph, Iterable<Token> witness, Comparator<Token> comparator) {
+        final VariantGraphRanking ranking = VariantGraphRanking.of(graph);
+        final Token[] tokens = StreamSupport.stream(witness.spliterator(), false).toArray(Token[]::new);
+        // -2 === ignore the start and the end vertex
+        final int[] ranks = IntStream.range(0, Math.max(0, ranking.apply(graph.getEnd()) - 1)).toArray();
+
+        final Matches matches = Matches.between(graph.vertices(), Arrays.asList(tokens), comparator);
+        final int[] rowStart = new int[tokens.length];
+        final int[] rowEnd = new int[tokens.length];
+
+        // start and end of the slice derived from each list of matching vertices
+        final Map<List<VariantGraph.Vertex>, int[]> slices = new IdentityHashMap<>();
+        int[] columns = new int[Math.max(16, tokens.length)];
+        VariantGraph.Vertex[] vertices = new VariantGraph.Vertex[columns.length];
+        int size = 0;
+        for (int row = 0; row < tokens.length; row++) {
+            final List<VariantGraph.Vertex> matchingVertices = matches.allMatches.getOrDefault(tokens[row], Collections.emptyList());
+            int[] slice = slices.get(matchingVertices);
+            if (slice == null) {
+                // columns in ascending order, each with the last of its matching vertices
+                final long[] matchesByColumn = new long[matchingVertices.size()];
+                for (int mc = 0; mc < matchesByColumn.length; mc++) {
+                    matchesByColumn[mc] = ((long) (ranking.apply(matchingVertices.get(mc)) - 1) << 32) | mc;
+                }
+                Arrays.sort(matchesByColumn);
+
+                if (size + matchesByColumn.length > columns.length) {
+                    final int capacity = Math.max(columns.length * 2, size + matchesByColumn.length);
+                    columns = Arrays.copyOf(columns, capacity);
+                    vertices = Arrays.copyOf(vertices, capacity);
+                }
+                final int start = size;
+                for (int mc = 0; mc < matchesByColumn.length; mc++) {
+                    final int column = (int) (matchesByColumn[mc] >>> 32);
+                    if (size > start && columns[size - 1] == column) {
+                        size--;
+                    }
+                    columns[size] = column;
+                    vertices[size] = matchingVertices.get((int) matchesByColumn[mc]);
+                    size++;
+                }
+                slices.put(matchingVertices, slice = new int[] { start, size });
+            }
+            rowStart[row] = slice[0];
+            rowEnd[row] = slice[1];
+        }
+        return new SparseMatchTable(tokens, ranks, rowStart, rowEnd, columns, vertices);
+    }
+
+    /*
+     * The index of the match in the given row and column, or a negative value
+     */
+    private int match(int rowIndex, int columnIndex) {
+        if (rowIndex < 0 || rowIndex >= witness.length) {
+            return -1;
+        }
+        return Arrays.binarySearch(columns, rowStart[rowIndex], rowEnd[rowIndex], columnIndex);
+    }
+
+    @Override
+    public VariantGraph.Vertex vertexAt(int rowIndex, int columnIndex) {
+        final int match = match(rowIndex, columnIndex);
+        return (match < 0 ? null : vertices[match]);
+    }
+
+    @Override
+    public Token tokenAt(int rowIndex, int columnIndex) {
+        return (match(rowIndex, columnIndex) < 0 ? null : witness[rowIndex]);
+    }
+
+    @Override
+    public List<Token> rowList() {
+        return Collections.unmodifiableList(Arrays.asList(witness));
+    }
+
+    @Override
+    public List<Integer> columnList() {
+        return Arrays.stream(ranks).boxed().collect(Collectors.toList());
+    }
+
+    /*
+     * Rows are visited in order, and the matches of each row merged with the ones of the row above by column, so every
+     * match is linked to its upper left neighbor in passing. Runs then start at matches without such a neighbor.
+     */
+    @Override
+    public Set<Island> getIslands() {
+        final int matches = IntStream.range(0, witness.length).map(row -> rowEnd[row] - rowStart[row]).sum();
+
+        // per match in row-major order: the first match of its run, and the row and the size of runs starting there
+        final int[] runs = new int[matches];
+        final int[] runRows = new int[matches];
+        final int[] runSizes = new int[matches];
+        int match = 0;
+        int above = 0;
+        for (int row = 0; row < witness.length; row++) {
+            // the matches of the row above are the ones from its start up to the first of this row
+            final int aboveEnd = match;
+            final int aboveColumns = (row == 0 ? 0 : rowStart[row - 1] - above);
+            for (int m = rowStart[row]; m < rowEnd[row]; m++, match++) {
+                final int column = columns[m];
+                while (above < aboveEnd && columns[above + aboveColumns] < column - 1) {
+                    above++;
+                }
+                if (above < aboveEnd && columns[above + aboveColumns] == column - 1) {
+                    runs[match] = runs[above];
+                } else {
+                    runs[match] = match;
+                    runRows[match] = row;
+                }
+                runSizes[runs[match]]++;
+            }
+            above = aboveEnd;
+        }
+
+        // runs are laid out consecutively, in the order of their first matches
+        final int[] offsets = new int[matches];
+        final VariantGraph.Vertex[] runVertices = new VariantGraph.Vertex[matches];
+        final int[] runColumns = new int[matches];
+        final Set<Island> islands = new HashSet<>();
+        match = 0;
+        int offset = 0;
+        for (int row = 0; row < witness.length; row++) {
+            for (int m = rowStart[row]; m < rowEnd[row]; m++, match++) {
+                final int run = runs[match];
+                if (run == match) {
+                    offsets[run] = offset;
+                    offset += runSizes[run];
+                }
+                final int position = offsets[run] + row - runRows[run];
+                runVertices[position] = vertices[m];
+                runColumns[position] = columns[m];
+            }
+        }
+        for (int run = 0; run < matches; run++) {
+            if (runs[run] == run) {
+                islands.add(new Island(null, runRows[run], runSizes[run], witness, runRows[run], runVertices, runColumns, offsets[run]));
+            }
+        }
+        return islands;
+    }
+}
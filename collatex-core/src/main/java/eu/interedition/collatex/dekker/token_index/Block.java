@@ -5,46 +5,65 @@ import eu.interedition.collatex.Witness;
 import eu.interedition.collatex.simple.SimpleToken;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
 import java.util.stream.IntStream;
 
 public class Block {
     // every Block has a token index as a parent
     private final TokenIndex tokenIndex;
+    // index of this block in the block arrays of the token index
+    public final int index;
     // length = number of tokens in this block of text
     public final int length;
     // start = start position in suffix array
     public final int start;
     // end = end position in suffix array
     public final int end;
-    // depth = number of witnesses this block of text occurs in
-    // Note: depth is lazy initialized
-    private Integer depth;
 
-    // For building blocks only
-    public Block(TokenIndex tokenIndex, int suffix_start_position, int length) {
+    public Block(TokenIndex tokenIndex, int index) {
         this.tokenIndex = tokenIndex;
-        this.start = suffix_start_position;
-        this.length = length;
-        this.end = 0;
-        this.depth = 0;
+        this.index = index;
+        this.start = tokenIndex.block_start[index];
+        this.end = tokenIndex.block_end[index];
+        this.length = tokenIndex.block_length[index];
     }
 
+    /**
+     * @deprecated blocks are created by the token index, see {@link TokenIndex#blocks}
+     */
+    @Deprecated
+    public Block(TokenIndex tokenIndex, int suffix_start_position, int length) {
+        this(tokenIndex, suffix_start_position, 0, length);
+    }
+
+    /**
+     * @deprecated blocks are created by the token index, see {@link TokenIndex#blocks}
+     */
+    @Deprecated
     public Block(TokenIndex tokenIndex, int start, int end, int length) {
+        // not one of the blocks of the token index, so properties are derived from the suffix array
         this.tokenIndex = tokenIndex;
+        this.index = -1;
         this.start = start;
         this.end = end;
         this.length = length;
-        this.depth = null;
     }
 
+    // depth = number of witnesses this block of text occurs in
     public int getDepth() {
-        if (depth == null) {
-            depth = calculateDepth();
+        if (index < 0) {
+            if (end == 0) {
+                return 0;
+            }
+            // the same block can occur multiple times in one witness
+            return (int) IntStream.rangeClosed(start, end)
+                .map(slot -> tokenIndex.token_witness_array[getStartToken(slot)])
+                .filter(witness -> witness >= 0)
+                .distinct()
+                .count();
         }
-        return depth;
+        return tokenIndex.block_depth[index];
     }
 
     // frequency = number of times this block of text occurrences in complete witness set
@@ -55,47 +74,67 @@ public class Block {
         return this.end - this.start + 1;
     }
 
+    // position in token array of the occurrence at the given slot of the suffix array, start <= slot <= end
+    public int getStartToken(int slot) {
+        return tokenIndex.suffix_array[slot];
+    }
+
+    // position in token array of the i-th occurrence in token order, 0 <= i < getFrequency()
+    public int getOccurrence(int i) {
+        if (index < 0) {
+            return occurrences()[i];
+        }
+        return tokenIndex.block_occurrences[tokenIndex.block_occurrence_offset[index] + i];
+    }
+
+    // number of occurrences starting before the given position in the token array, i.e. in the preceding witnesses if
+    // the position is the start of a witness
+    public int countOccurrencesBefore(int token_position) {
+        if (index < 0) {
+            final int found = Arrays.binarySearch(occurrences(), token_position);
+            return (found < 0 ? -(found + 1) : found);
+        }
+        final int from = tokenIndex.block_occurrence_offset[index];
+        final int found = Arrays.binarySearch(tokenIndex.block_occurrences, from, tokenIndex.block_occurrence_offset[index + 1], token_position);
+        return (found < 0 ? -(found + 1) : found) - from;
+    }
+
+    // the occurrences of a block not indexed by the token index, in token order
+    private int[] occurrences() {
+        return IntStream.rangeClosed(start, end).map(this::getStartToken).sorted().toArray();
+    }
+
+    public Block.Instance getInstance(int slot) {
+        return new Instance(getStartToken(slot), this);
+    }
+
+    /**
+     * @deprecated use {@link #getInstance(int)} for the slots from {@link #start} to {@link #end}
+     */
+    @Deprecated
     public List<Block.Instance> getAllInstances() {
         List<Block.Instance> instances = new ArrayList<>();
-        for (int i = start; i <= end; i++) {
-            // every i is one occurrence
-            int token_position = tokenIndex.suffix_array[i];
-            Block.Instance instance = new Instance(token_position, this);
-            instances.add(instance);
+        for (int slot = start; slot <= end; slot++) {
+            instances.add(getInstance(slot));
         }
         return instances;
     }
 
     // transform lcp interval into int stream range
     public IntStream getAllOccurrencesAsRanges() {
-        IntStream result = IntStream.empty();
         // with/or without end
-        for (int i = start; i < end; i++) {
-            // every i is one occurrence
-            int token_position = tokenIndex.suffix_array[i];
-            IntStream range = IntStream.range(token_position, token_position + length);
-            result = IntStream.concat(result, range);
-        }
-        return result;
+        return IntStream.range(start, end).flatMap(slot -> {
+            // every slot is one occurrence
+            int token_position = getStartToken(slot);
+            return IntStream.range(token_position, token_position + length);
+        });
     }
 
     @Override
     public String toString() {
-        if (end == 0) {
-            return "Unclosed LCP interval start at: " + start + ",  length: " + length;
-        }
         return ("LCP interval start at: " + start + ", depth: " + this.getDepth() + ", length: " + this.length + " getFrequency:" + getFrequency());
     }
 
-    private int calculateDepth() {
-        // the same block can occur multiple times in one witness
-        Set<Witness> witnesses = new HashSet<>();
-        for (Block.Instance instance : getAllInstances()) {
-            witnesses.add(instance.getWitness());
-        }
-        return witnesses.size();
-    }
-
     public static class Instance {
         // position in token array
         public final int start_token;
@@ -2,11 +2,18 @@ package eu.interedition.collatex.dekker.token_index;
 
 import eu.interedition.collatex.Token;
 import eu.interedition.collatex.Witness;
+import eu.interedition.collatex.matching.TokenEquivalence;
+import eu.interedition.collatex.suffixarray.ParallelPrefixDoubling;
 import eu.interedition.collatex.suffixarray.SAIS;
 import eu.interedition.collatex.suffixarray.SuffixArrays;
 import eu.interedition.collatex.suffixarray.SuffixData;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.StreamSupport;
 
 /**
@@ -14,16 +21,32 @@ import java.util.stream.StreamSupport;
  */
 public class TokenIndex {
     private final List<? extends Iterable<Token>> w;
+    private final Comparator<Token> tokenComparator;
     private final Comparator<Token> comparator;
     //TODO: not sure this functionality should be in this class or in a separate class
     private Map<Witness, Integer> witnessToStartToken;
     private Map<Witness, Integer> witnessToEndToken;
     public Token[] token_array;
+    // token ids: equal tokens share the position of their first occurrence as id, marker tokens keep their own
+    public int[] token_id_array;
+    // witness ordinals: the witness of the token at every position, -1 for marker tokens
+    public int[] token_witness_array;
     //END witness data
     public int[] suffix_array;
     public int[] LCP_array;
+    // LCP intervals, as parallel arrays ordered by end position in the suffix array
+    public int[] block_start;
+    public int[] block_end;
+    public int[] block_length;
+    public int[] block_depth;
+    // start positions of the occurrences of every block in ascending order, i.e. grouped by witness; the occurrences of
+    // block b are stored from block_occurrence_offset[b] up to block_occurrence_offset[b + 1]
+    public int[] block_occurrences;
+    public int[] block_occurrence_offset;
     public List<Block> blocks;
     private Map<Witness, List<Block.Instance>> witnessToBlockInstances;
+    // number of threads building the index, see setParallelism()
+    private int parallelism = 1;
 
 
     public TokenIndex(Comparator<Token> comparator, Iterable<Token>... tokens) {
@@ -32,27 +55,102 @@ public class TokenIndex {
 
     public TokenIndex(Comparator<Token> comparator, List<? extends Iterable<Token>> w) {
         this.w = w;
+        this.tokenComparator = comparator;
         this.comparator = new MarkerTokenComparatorWrapper(comparator);
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used to build the index. With more than one thread, tokens of different witnesses
+     * are collected and assigned ids in parallel and the suffix array is built via {@link ParallelPrefixDoubling};
+     * blocks and their instances are collected by a single thread. The resulting index is the same as the one
+     * built by a single thread.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
     public int getStartTokenPositionForWitness(Witness witness) {
         return witnessToStartToken.get(witness);
     }
 
-    // 1. prepare token array
+    // 1. prepare token array and assign token ids
     // 2. derive the suffix array
     // 3. derive LCP array
     // 4. derive LCP intervals
     // TODO: we do not have to store w!
     public void prepare() {
+        if (parallelism > 1) {
+            final ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                prepare(pool);
+            } finally {
+                pool.shutdown();
+            }
+            return;
+        }
         this.token_array = this.prepareTokenArray();
-        SuffixData suffixData = SuffixArrays.createWithLCP(token_array, new SAIS(), comparator);
+        this.token_id_array = this.prepareTokenIdArray();
+        this.token_witness_array = this.prepareTokenWitnessArray();
+        SuffixData suffixData = SuffixArrays.createWithLCP(token_id_array, 0, token_id_array.length, new SAIS());
+        this.suffix_array = suffixData.getSuffixArray();
+        this.LCP_array = suffixData.getLCP();
+        this.blocks = splitLCP_ArrayIntoIntervals();
+        constructWitnessToBlockInstancesMap();
+    }
+
+    private void prepare(ForkJoinPool pool) {
+        this.token_array = this.prepareTokenArray(pool);
+        this.token_id_array = this.prepareTokenIdArray(pool);
+        this.token_witness_array = this.prepareTokenWitnessArray();
+        SuffixData suffixData = SuffixArrays.createWithLCP(token_id_array, 0, token_id_array.length, new ParallelPrefixDoubling(pool));
         this.suffix_array = suffixData.getSuffixArray();
         this.LCP_array = suffixData.getLCP();
         this.blocks = splitLCP_ArrayIntoIntervals();
         constructWitnessToBlockInstancesMap();
     }
 
+    private Token[] prepareTokenArray(ForkJoinPool pool) {
+        final List<List<Token>> witnessTokens = pool.submit(() -> w.parallelStream()
+            .map(tokens -> StreamSupport.stream(tokens.spliterator(), false).collect(Collectors.toList()))
+            .collect(Collectors.toList())
+        ).join();
+
+        final int[] witnessStart = new int[witnessTokens.size()];
+        int counter = 0;
+        witnessToStartToken = new HashMap<>();
+        witnessToEndToken = new HashMap<>();
+        for (int wc = 0; wc < witnessTokens.size(); wc++) {
+            final List<Token> tokens = witnessTokens.get(wc);
+            final Witness witness = tokens.stream()
+                .findFirst()
+                .map(Token::getWitness)
+                .orElseThrow(() -> new IllegalArgumentException("Empty witness"));
+
+            witnessStart[wc] = counter;
+            witnessToStartToken.put(witness, counter);
+            counter += tokens.size();
+            witnessToEndToken.put(witness, counter);
+            counter++;
+        }
+
+        final Token[] tokenArray = new Token[counter];
+        pool.submit(() -> IntStream.range(0, witnessTokens.size()).parallel().forEach(wc -> {
+            final List<Token> tokens = witnessTokens.get(wc);
+            for (int tc = 0; tc < tokens.size(); tc++) {
+                tokenArray[witnessStart[wc] + tc] = tokens.get(tc);
+            }
+            tokenArray[witnessStart[wc] + tokens.size()] = new MarkerToken(wc + 1);
+        })).join();
+        return tokenArray;
+    }
+
     private Token[] prepareTokenArray() {
         List<Token> tempTokenList = new ArrayList<>();
         int counter = 0;
@@ -76,6 +174,68 @@ public class TokenIndex {
         return tempTokenList.toArray(new Token[tempTokenList.size()]);
     }
 
+    private int[] prepareTokenIdArray(ForkJoinPool pool) {
+        final Function<Token, String> key = internedKey(tokenComparator, token_array);
+        if (key == null) {
+            return prepareTokenIdArray();
+        }
+        // the first occurrence of every distinct token, found in parallel
+        final Map<String, Integer> distinctTokens = new ConcurrentHashMap<>();
+        pool.submit(() -> IntStream.range(0, token_array.length).parallel()
+            .filter(i -> !(token_array[i] instanceof MarkerToken))
+            .forEach(i -> distinctTokens.merge(key.apply(token_array[i]), i, Math::min))
+        ).join();
+
+        final int[] ids = new int[token_array.length];
+        pool.submit(() -> IntStream.range(0, token_array.length).parallel()
+            .forEach(i -> ids[i] = (token_array[i] instanceof MarkerToken ? i : distinctTokens.get(key.apply(token_array[i]))))
+        ).join();
+        return ids;
+    }
+
+    private int[] prepareTokenIdArray() {
+        final int[] ids = new int[token_array.length];
+        final Function<Token, String> key = internedKey(tokenComparator, token_array);
+        if (key == null) {
+            // compare every token to the distinct ones found so far
+            final Map<Token, Integer> distinctTokens = new TreeMap<>(comparator);
+            for (int i = 0; i < token_array.length; i++) {
+                distinctTokens.putIfAbsent(token_array[i], i);
+                ids[i] = distinctTokens.get(token_array[i]);
+            }
+            return ids;
+        }
+        // intern the strings tokens are compared by, in one hashing pass
+        final Map<String, Integer> distinctTokens = new HashMap<>();
+        for (int i = 0; i < token_array.length; i++) {
+            final Token token = token_array[i];
+            if (token instanceof MarkerToken) {
+                ids[i] = i;
+                continue;
+            }
+            final Integer id = distinctTokens.putIfAbsent(key.apply(token), i);
+            ids[i] = (id == null ? i : id);
+        }
+        return ids;
+    }
+
+    private int[] prepareTokenWitnessArray() {
+        final int[] witnesses = new int[token_array.length];
+        final Map<Witness, Integer> witnessOrdinals = new HashMap<>();
+        for (int i = 0; i < token_array.length; i++) {
+            final Token token = token_array[i];
+            witnesses[i] = (token instanceof MarkerToken ? -1 : witnessOrdinals.computeIfAbsent(token.getWitness(), w -> witnessOrdinals.size()));
+        }
+        return witnesses;
+    }
+
+    /**
+     * @return the key tokens other than markers are interned by, see {@link TokenEquivalence#key(Comparator, Iterable)}
+     */
+    static Function<Token, String> internedKey(Comparator<Token> comparator, Token[] tokens) {
+        return TokenEquivalence.key(comparator, () -> Arrays.stream(tokens).filter(token -> !(token instanceof MarkerToken)).iterator());
+    }
+
     private class MarkerToken implements Token {
         private final int witnessIdentifier;
 
@@ -128,41 +288,113 @@ public class TokenIndex {
     }
 
     protected List<Block> splitLCP_ArrayIntoIntervals() {
-        List<Block> closedIntervals = new ArrayList<>();
+        final int[] start = new int[LCP_array.length];
+        final int[] end = new int[LCP_array.length];
+        final int[] length = new int[LCP_array.length];
+        int closedIntervals = 0;
+        final int[] openStart = new int[LCP_array.length];
+        final int[] openLength = new int[LCP_array.length];
+        int openIntervals = 0;
         int previousLCP_value = 0;
-        Stack<Block> openIntervals = new Stack<>();
         for (int idx = 0; idx < LCP_array.length; idx++) {
             int lcp_value = LCP_array[idx];
             if (lcp_value > previousLCP_value) {
-                openIntervals.push(new Block(this, idx - 1, lcp_value));
+                openStart[openIntervals] = idx - 1;
+                openLength[openIntervals++] = lcp_value;
                 previousLCP_value = lcp_value;
             } else if (lcp_value < previousLCP_value) {
                 // close open intervals that are larger than current LCP value
-                while (!openIntervals.isEmpty() && openIntervals.peek().length > lcp_value) {
-                    Block a = openIntervals.pop();
-                    closedIntervals.add(new Block(this, a.start, idx - 1, a.length));
+                while (openIntervals > 0 && openLength[openIntervals - 1] > lcp_value) {
+                    openIntervals--;
+                    start[closedIntervals] = openStart[openIntervals];
+                    end[closedIntervals] = idx - 1;
+                    length[closedIntervals++] = openLength[openIntervals];
                 }
                 // then: open a new interval starting with filtered intervals
                 if (lcp_value > 0) {
-                    int start = closedIntervals.get(closedIntervals.size() - 1).start;
-                    openIntervals.add(new Block(this, start, lcp_value));
+                    openStart[openIntervals] = start[closedIntervals - 1];
+                    openLength[openIntervals++] = lcp_value;
                 }
                 previousLCP_value = lcp_value;
             }
         }
         // add all the open intervals to the result
-        for (Block interval : openIntervals) {
-            if (interval.length > 0) {
-                closedIntervals.add(new Block(this, interval.start, LCP_array.length - 1, interval.length));
+        for (int i = 0; i < openIntervals; i++) {
+            if (openLength[i] > 0) {
+                start[closedIntervals] = openStart[i];
+                end[closedIntervals] = LCP_array.length - 1;
+                length[closedIntervals++] = openLength[i];
             }
         }
-        return closedIntervals;
+        this.block_start = Arrays.copyOf(start, closedIntervals);
+        this.block_end = Arrays.copyOf(end, closedIntervals);
+        this.block_length = Arrays.copyOf(length, closedIntervals);
+        this.block_depth = calculateBlockDepths();
+        indexBlockOccurrences();
+
+        final List<Block> blocks = new ArrayList<>(closedIntervals);
+        for (int b = 0; b < closedIntervals; b++) {
+            blocks.add(new Block(this, b));
+        }
+        return blocks;
+    }
+
+    // The depth of a block is the number of distinct witnesses among its slots in the suffix array. Blocks are ordered
+    // by end slot, so all depths are computed in one pass over the suffix array, counting in a Fenwick tree only the
+    // last slot seen so far for every witness.
+    private int[] calculateBlockDepths() {
+        final int[] depths = new int[block_start.length];
+        final int[] lastSlot = new int[w.size()];
+        Arrays.fill(lastSlot, -1);
+        final int[] lastSlotCounts = new int[suffix_array.length + 1];
+        for (int slot = 0, b = 0; slot < suffix_array.length && b < depths.length; slot++) {
+            final int witness = token_witness_array[suffix_array[slot]];
+            if (witness >= 0) {
+                if (lastSlot[witness] >= 0) {
+                    addCount(lastSlotCounts, lastSlot[witness], -1);
+                }
+                addCount(lastSlotCounts, slot, 1);
+                lastSlot[witness] = slot;
+            }
+            for (; b < depths.length && block_end[b] == slot; b++) {
+                depths[b] = countUpTo(lastSlotCounts, slot) - countUpTo(lastSlotCounts, block_start[b] - 1);
+            }
+        }
+        return depths;
+    }
+
+    private void indexBlockOccurrences() {
+        block_occurrence_offset = new int[block_start.length + 1];
+        for (int b = 0; b < block_start.length; b++) {
+            block_occurrence_offset[b + 1] = block_occurrence_offset[b] + (block_end[b] - block_start[b] + 1);
+        }
+        block_occurrences = new int[block_occurrence_offset[block_start.length]];
+        for (int b = 0; b < block_start.length; b++) {
+            final int offset = block_occurrence_offset[b];
+            System.arraycopy(suffix_array, block_start[b], block_occurrences, offset, block_occurrence_offset[b + 1] - offset);
+            Arrays.sort(block_occurrences, offset, block_occurrence_offset[b + 1]);
+        }
+    }
+
+    private static void addCount(int[] counts, int slot, int delta) {
+        for (int i = slot + 1; i < counts.length; i += (i & -i)) {
+            counts[i] += delta;
+        }
+    }
+
+    private static int countUpTo(int[] counts, int slot) {
+        int count = 0;
+        for (int i = slot + 1; i > 0; i -= (i & -i)) {
+            count += counts[i];
+        }
+        return count;
     }
 
     private void constructWitnessToBlockInstancesMap() {
         witnessToBlockInstances = new HashMap<>();
-        for (Block interval : blocks) {
-            for (Block.Instance instance : interval.getAllInstances()) {
+        for (Block block : blocks) {
+            for (int slot = block.start; slot <= block.end; slot++) {
+                Block.Instance instance = block.getInstance(slot);
                 Witness w = instance.getWitness();
                 List<Block.Instance> instances = witnessToBlockInstances.computeIfAbsent(w, v -> new ArrayList<>());
                 instances.add(instance);
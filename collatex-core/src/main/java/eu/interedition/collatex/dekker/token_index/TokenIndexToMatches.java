@@ -3,13 +3,9 @@ package eu.interedition.collatex.dekker.token_index;
 import eu.interedition.collatex.Token;
 import eu.interedition.collatex.VariantGraph;
 import eu.interedition.collatex.Witness;
-import eu.interedition.collatex.dekker.Match;
-import eu.interedition.collatex.dekker.island.Coordinate;
 import eu.interedition.collatex.dekker.island.Island;
-import eu.interedition.collatex.util.VariantGraphRanking;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Created by ronald on 4/26/15.
@@ -17,8 +13,6 @@ import java.util.stream.Collectors;
 public class TokenIndexToMatches {
 
     public static Set<Island> createMatches(TokenIndex tokenIndex, VariantGraph.Vertex[] vertex_array, VariantGraph g, Iterable<Token> w) {
-        // we need the variant graph ranking for the projection in the vector space
-        VariantGraphRanking ranking = VariantGraphRanking.of(g);
         // init result
         Set<Island> result = new HashSet<>();
         // based on the TokenIndex we build up the islands...
@@ -26,6 +20,12 @@ public class TokenIndexToMatches {
         Witness witness = w.iterator().next().getWitness();
         int startTokenPositionForWitness = tokenIndex.getStartTokenPositionForWitness(witness);
         List<Block.Instance> instances = tokenIndex.getBlockInstancesForWitness(witness);
+        // the variant graph rank is used for the projection in the vector space; islands share this array as their columns
+        int[] columns = new int[startTokenPositionForWitness];
+        for (int graph_token = 0; graph_token < startTokenPositionForWitness; graph_token++) {
+            VariantGraph.Vertex v = vertex_array[graph_token];
+            columns[graph_token] = (v == null ? -1 : v.rank() - 1);
+        }
         // we have to combine each instance in the witness with the other instances already present in the graph
         for (Block.Instance witnessInstance : instances) {
             // System.out.println("Debug creating matches for witness block instance: "+witnessInstance);
@@ -33,33 +33,22 @@ public class TokenIndexToMatches {
             // calculate graph block instances
             // fetch block
             Block block = witnessInstance.block;
-            List<Block.Instance> allInstances = block.getAllInstances();
-            List<Block.Instance> graphInstances = allInstances.stream().filter(instance -> instance.start_token < startTokenPositionForWitness).collect(Collectors.toList());
+            // the graph block instances are the occurrences in the witnesses preceding this one
+            int graphInstances = block.countOccurrencesBefore(startTokenPositionForWitness);
+            int row = witnessInstance.start_token - startTokenPositionForWitness;
             // now for every graph block instance we have to create matches
             // for backwards compatibility reasons we do that with the Island and Coordinates classes
-            for (Block.Instance graphInstance : graphInstances) {
-                // we need to create an island for every block instance in the graph corresponding to this block instance in the witness
-                Island island = new Island(witnessInstance);
-                // for every matching token from the witness with a vertex in the graph we need to create a coordinate and
-                // 1) add it to the island and 2) set the corresponding cell in the table
-                // set the tokens and vertices on the table
-                int graph_start_token = graphInstance.start_token;
-                for (int i = 0; i < block.length; i++) {
-                    VariantGraph.Vertex v = vertex_array[graph_start_token+i];
-                    if (v==null) {
-                        throw new RuntimeException("Vertex is null for token \"+graph_start_token+i+\" that is supposed to be mapped to a vertex in the graph!");
+            for (int occurrence = 0; occurrence < graphInstances; occurrence++) {
+                int graph_start_token = block.getOccurrence(occurrence);
+                // every token of the graph instance has to be mapped to a vertex
+                for (int graph_token = graph_start_token; graph_token < graph_start_token + block.length; graph_token++) {
+                    if (columns[graph_token] < 0) {
+                        throw new RuntimeException("Vertex is null for token " + graph_token + " that is supposed to be mapped to a vertex in the graph!");
                     }
-                    int column = ranking.apply(v)-1;
-                    int witnessStartToken = witnessInstance.start_token + i;
-                    int row = witnessStartToken - startTokenPositionForWitness;
-                    // create coordinate and at it to the Island for the combination of graph block instance and witness block instance
-                    // /*if (i == 0)*/ System.out.println("We go "+row + " "+column +" "+witnessStartToken);
-                    Token token = tokenIndex.token_array[witnessStartToken];
-                    Match match = new Match(v, token);
-                    Coordinate coordinate = new Coordinate(row, column, match);
-                    island.add(coordinate);
                 }
-                result.add(island);
+                // we need to create an island for every block instance in the graph corresponding to this block instance in the witness,
+                // matching the tokens of the witness instance with the vertices of the graph instance
+                result.add(new Island(witnessInstance, row, block.length, tokenIndex.token_array, witnessInstance.start_token, vertex_array, columns, graph_start_token));
             }
         }
         return result;
@@ -19,70 +19,178 @@
 
 package eu.interedition.collatex.matching;
 
+import java.util.Arrays;
+
+/**
+ * Levenshtein distances computed bit-parallel, after Myers (1999) and Hyyrö (2003).
+ * <p>
+ * The columns of the dynamic programming matrix are encoded as bit vectors of vertical score deltas, one bit per
+ * character of a {@link Pattern pattern}. Patterns are precomputed once per string and hold a bitmask of the
+ * positions of every distinct character; each text character then costs a few word operations per 64 pattern
+ * characters. Bounded computations give up as soon as the threshold can no longer be met.
+ */
 public final class EditDistance {
-    private static final int MAX_DISTANCE_COMPARISON = 2500;
 
     public static int compute(String str1, String str2) {
-        if ((str1.length() * str2.length() > MAX_DISTANCE_COMPARISON)) {
-            return MAX_DISTANCE_COMPARISON;
+        return pattern(str1).distance(str2, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the distance between both strings if it does not exceed the threshold, <code>threshold + 1</code>
+     * otherwise
+     */
+    public static int compute(String str1, String str2, int threshold) {
+        if (Math.abs(str1.length() - str2.length()) > threshold) {
+            return threshold + 1;
         }
+        return pattern(str1).distance(str2, threshold);
+    }
+
+    public static Pattern pattern(CharSequence str) {
+        return new Pattern(str);
+    }
+
+    /**
+     * The bitmasks of a string the distances of other strings are computed against.
+     */
+    public static final class Pattern {
 
-        final char[] str1Chars = str1.toCharArray();
-        final int str1Length = str1Chars.length;
-        final char[] str2Chars = str2.toCharArray();
-        final int str2Length = str2Chars.length;
+        private static final ThreadLocal<long[]> BLOCKS = ThreadLocal.withInitial(() -> new long[0]);
 
-        if (str1Length == 0) {
-            return str2Length;
+        private final int length;
+        private final int blocks;
+
+        // the distinct characters of the pattern, sorted, and their position bitmasks, one word per block
+        private final char[] chars;
+        private final long[] masks;
+
+        private Pattern(CharSequence str) {
+            this.length = str.length();
+            this.blocks = (length + 63) >>> 6;
+
+            final char[] distinct = new char[length];
+            for (int i = 0; i < length; i++) {
+                distinct[i] = str.charAt(i);
+            }
+            Arrays.sort(distinct);
+            int distinctLength = 0;
+            for (int i = 0; i < length; i++) {
+                if (distinctLength == 0 || distinct[distinctLength - 1] != distinct[i]) {
+                    distinct[distinctLength++] = distinct[i];
+                }
+            }
+            this.chars = Arrays.copyOf(distinct, distinctLength);
+
+            this.masks = new long[chars.length * blocks];
+            for (int i = 0; i < length; i++) {
+                final int c = Arrays.binarySearch(chars, str.charAt(i));
+                masks[c * blocks + (i >>> 6)] |= (1L << (i & 63));
+            }
         }
-        if (str2Length == 0) {
-            return str1Length;
+
+        public int length() {
+            return length;
         }
 
-        int[][][] cache = new int[30][][];
-        int matrix[][];
-        if (str2Length >= cache.length) {
-            matrix = form(str1Length, str2Length);
-        } else if (cache[str2Length] != null) {
-            matrix = cache[str2Length];
-        } else {
-            matrix = cache[str2Length] = form(str1Length, str2Length);
+        /**
+         * @return the distance of the given text to this pattern if it does not exceed the threshold,
+         * <code>threshold + 1</code> otherwise
+         */
+        public int distance(CharSequence text, int threshold) {
+            final int textLength = text.length();
+            if (Math.abs(length - textLength) > threshold) {
+                return threshold + 1;
+            }
+            if (length == 0 || textLength == 0) {
+                return Math.max(length, textLength);
+            }
+            return (blocks == 1 ? distanceInWord(text, threshold) : distanceInBlocks(text, threshold));
         }
 
-        for (int i = 1; i <= str1Length; i++) {
-            final char str1Char = str1Chars[i - 1];
-            for (int j = 1; j <= str2Length; j++) {
-                final char str2Char = str2Chars[j - 1];
-                final int cost = (str1Char == str2Char ? 0 : 1);
-                matrix[i][j] = min3(matrix[i - 1][j] + 1, matrix[i][j - 1] + 1, matrix[i - 1][j - 1] + cost);
+        private int distanceInWord(CharSequence text, int threshold) {
+            final int textLength = text.length();
+            final long last = 1L << (length - 1);
+
+            long pv = -1L;
+            long mv = 0L;
+            int score = length;
+            for (int j = 0; j < textLength; j++) {
+                final int c = Arrays.binarySearch(chars, text.charAt(j));
+                final long eq = (c < 0 ? 0L : masks[c]);
+                final long xv = eq | mv;
+                final long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                if ((ph & last) != 0) {
+                    score++;
+                } else if ((mh & last) != 0) {
+                    score--;
+                }
+                // the first row of the matrix counts up, so a positive delta enters from above
+                ph = (ph << 1) | 1L;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+
+                // every remaining text character lowers the score by one at best
+                if (score - (textLength - j - 1) > threshold) {
+                    return threshold + 1;
+                }
             }
+            return score;
         }
 
-        return matrix[str1Length][str2Length];
-    }
+        private int distanceInBlocks(CharSequence text, int threshold) {
+            final int textLength = text.length();
+            final long last = 1L << ((length - 1) & 63);
 
-    private static int[][] form(int n, int m) {
-        int[][] d = new int[n + 1][m + 1];
+            long[] vectors = BLOCKS.get();
+            if (vectors.length < 2 * blocks) {
+                BLOCKS.set(vectors = new long[2 * blocks]);
+            }
+            for (int b = 0; b < blocks; b++) {
+                vectors[2 * b] = -1L;
+                vectors[2 * b + 1] = 0L;
+            }
 
-        for (int i = 0; i <= n; i++) {
-            d[i][0] = i;
+            int score = length;
+            for (int j = 0; j < textLength; j++) {
+                final int c = Arrays.binarySearch(chars, text.charAt(j));
+                // the horizontal delta entering the current block from the one above
+                int delta = 1;
+                for (int b = 0; b < blocks; b++) {
+                    final long pv = vectors[2 * b];
+                    final long mv = vectors[2 * b + 1];
+                    long eq = (c < 0 ? 0L : masks[c * blocks + b]);
+                    final long xv = eq | mv;
+                    if (delta < 0) {
+                        eq |= 1L;
+                    }
+                    final long xh = (((eq & pv) + pv) ^ pv) | eq;
+                    long ph = mv | ~(xh | pv);
+                    long mh = pv & xh;
 
-        }
-        for (int j = 0; j <= m; j++) {
-            d[0][j] = j;
-        }
-        return d;
-    }
+                    final long out = (b == blocks - 1 ? last : Long.MIN_VALUE);
+                    final int outDelta = ((ph & out) != 0 ? 1 : ((mh & out) != 0 ? -1 : 0));
 
-    private static int min3(int a, int b, int c) {
-        int mi = a;
-        if (b < mi) {
-            mi = b;
-        }
-        if (c < mi) {
-            mi = c;
+                    ph <<= 1;
+                    mh <<= 1;
+                    if (delta < 0) {
+                        mh |= 1L;
+                    } else if (delta > 0) {
+                        ph |= 1L;
+                    }
+                    vectors[2 * b] = mh | ~(xv | ph);
+                    vectors[2 * b + 1] = ph & xv;
+                    delta = outDelta;
+                }
+                score += delta;
+
+                if (score - (textLength - j - 1) > threshold) {
+                    return threshold + 1;
+                }
+            }
+            return score;
         }
-        return mi;
     }
-
 }
@@ -22,7 +22,9 @@ package eu.interedition.collatex.matching;
 import eu.interedition.collatex.Token;
 import eu.interedition.collatex.simple.SimpleToken;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 
 public class EditDistanceTokenComparator implements Comparator<Token> {
 
@@ -36,11 +38,27 @@ public class EditDistanceTokenComparator implements Comparator<Token> {
         this.threshold = threshold;
     }
 
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return the clusters of the normalized contents of the given tokens, whose ids are a valid equivalence of
+     * tokens, unlike comparisons by this comparator
+     */
+    public NearMatchClusters cluster(Iterable<Token> tokens) {
+        final List<String> contents = new ArrayList<>();
+        for (Token token : tokens) {
+            contents.add(((SimpleToken) token).getNormalized());
+        }
+        return NearMatchClusters.of(contents, threshold);
+    }
+
     @Override
     public int compare(Token base, Token witness) {
         final String baseContent = ((SimpleToken) base).getNormalized();
         final String witnessContent = ((SimpleToken) witness).getNormalized();
-        return (EditDistance.compute(baseContent, witnessContent) <= threshold) ?
+        return (EditDistance.compute(baseContent, witnessContent, threshold) <= threshold) ?
                 0 : baseContent.compareTo(witnessContent);
     }
 }
@@ -23,17 +23,16 @@ import eu.interedition.collatex.Token;
 import eu.interedition.collatex.VariantGraph;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 public class Matches {
 
@@ -42,44 +41,108 @@ public class Matches {
     public final Set<Token> ambiguousInWitness;
     public final Set<Token> uniqueInWitness;
 
+    /*
+     * Vertices and witness tokens are joined by the class of their tokens: vertices are grouped by the class of their
+     * first token, and the witness is read once to count its tokens per class. A vertex matched by more than one token
+     * of the witness makes all of these tokens ambiguous, so both the ambiguity of tokens and of vertices follow from the
+     * counts of their class. All sets keep the order of the witness.
+     *
+     * Tokens compared by a comparator without token classes are compared pairwise.
+     */
     public static Matches between(final Iterable<VariantGraph.Vertex> vertices, final Iterable<Token> witnessTokens, Comparator<Token> comparator) {
+        final List<Token> tokens = new ArrayList<>();
+        witnessTokens.forEach(tokens::add);
+
+        final List<VariantGraph.Vertex> baseVertices = new ArrayList<>();
+        final List<Token> baseTokens = new ArrayList<>();
+        for (VariantGraph.Vertex vertex : vertices) {
+            final Iterator<Token> vertexTokens = vertex.tokens().iterator();
+            if (vertexTokens.hasNext()) {
+                baseVertices.add(vertex);
+                baseTokens.add(vertexTokens.next());
+            }
+        }
+
+        final TokenEquivalence equivalence = TokenEquivalence.of(comparator, Arrays.asList(baseTokens, tokens));
+        if (equivalence == null) {
+            return pairwise(baseVertices, baseTokens, tokens, comparator);
+        }
+        final int[] tokenClasses = tokens.stream().mapToInt(equivalence::id).toArray();
+
+        final Map<Integer, List<VariantGraph.Vertex>> verticesByClass = new HashMap<>();
+        for (int vc = 0; vc < baseVertices.size(); vc++) {
+            verticesByClass.computeIfAbsent(equivalence.id(baseTokens.get(vc)), c -> new ArrayList<>()).add(baseVertices.get(vc));
+        }
+        final int[] witnessCounts = new int[equivalence.size()];
+        for (int tokenClass : tokenClasses) {
+            witnessCounts[tokenClass]++;
+        }
 
         final Map<Token, List<VariantGraph.Vertex>> allMatches = new HashMap<>();
+        final Set<Token> unmatchedInWitness = new LinkedHashSet<>();
+        final Set<Token> ambiguousInWitness = new LinkedHashSet<>();
+        final Set<Token> uniqueInWitness = new LinkedHashSet<>();
+        for (int tc = 0; tc < tokens.size(); tc++) {
+            final Token token = tokens.get(tc);
+            final List<VariantGraph.Vertex> matches = verticesByClass.get(tokenClasses[tc]);
+            if (matches == null) {
+                unmatchedInWitness.add(token);
+                continue;
+            }
+            allMatches.put(token, Collections.unmodifiableList(matches));
+            // (have to check: base -> witness, and witness -> base)
+            if (matches.size() > 1 || witnessCounts[tokenClasses[tc]] > 1) {
+                ambiguousInWitness.add(token);
+            } else {
+                uniqueInWitness.add(token);
+            }
+        }
 
-        StreamSupport.stream(vertices.spliterator(), false).forEach(vertex ->
-            vertex.tokens().stream().findFirst().ifPresent(baseToken ->
-                StreamSupport.stream(witnessTokens.spliterator(), false)
-                    .filter(witnessToken -> comparator.compare(baseToken, witnessToken) == 0)
-                    .forEach(matchingToken -> allMatches.computeIfAbsent(matchingToken, t -> new ArrayList<>()).add(vertex))));
-
-        final Set<Token> unmatchedInWitness = StreamSupport.stream(witnessTokens.spliterator(), false)
-            .filter(t -> !allMatches.containsKey(t))
-            .collect(Collectors.toCollection(LinkedHashSet::new));
-
-        final Set<VariantGraph.Vertex> ambiguousInBase = allMatches.values().stream()
-            .flatMap(List::stream)
-            .collect(Collectors.toMap(Function.identity(), v -> 1, (a, b) -> a + b))
-            .entrySet()
-            .stream()
-            .filter(v -> v.getValue() > 1)
-            .map(Map.Entry::getKey)
-            .collect(Collectors.toCollection(LinkedHashSet::new));
-
-        // (have to check: base -> witness, and witness -> base)
-        final Set<Token> ambiguousInWitness = Stream.concat(
-            StreamSupport.stream(witnessTokens.spliterator(), false)
-                .filter(t -> allMatches.getOrDefault(t, Collections.emptyList()).size() > 1),
-
-            allMatches.entrySet().stream()
-                .filter(match -> match.getValue().stream().anyMatch(ambiguousInBase::contains))
-                .map(Map.Entry::getKey)
-        ).collect(Collectors.toCollection(LinkedHashSet::new));
-
-        // sure tokens
-        // have to check unsure tokens because of (base -> witness && witness -> base)
-        final Set<Token> uniqueInWitness = StreamSupport.stream(witnessTokens.spliterator(), false)
-            .filter(t -> allMatches.getOrDefault(t, Collections.emptyList()).size() == 1 && !ambiguousInWitness.contains(t))
-            .collect(Collectors.toCollection(LinkedHashSet::new));
+        return new Matches(allMatches, unmatchedInWitness, ambiguousInWitness, uniqueInWitness);
+    }
+
+    private static Matches pairwise(List<VariantGraph.Vertex> baseVertices, List<Token> baseTokens, List<Token> tokens, Comparator<Token> comparator) {
+        final List<List<VariantGraph.Vertex>> tokenMatches = new ArrayList<>(tokens.size());
+        final int[] vertexCounts = new int[baseVertices.size()];
+        for (Token token : tokens) {
+            List<VariantGraph.Vertex> matches = null;
+            for (int vc = 0; vc < baseVertices.size(); vc++) {
+                if (comparator.compare(baseTokens.get(vc), token) == 0) {
+                    if (matches == null) {
+                        matches = new ArrayList<>();
+                    }
+                    matches.add(baseVertices.get(vc));
+                    vertexCounts[vc]++;
+                }
+            }
+            tokenMatches.add(matches);
+        }
+        final Set<VariantGraph.Vertex> ambiguousInBase = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int vc = 0; vc < baseVertices.size(); vc++) {
+            if (vertexCounts[vc] > 1) {
+                ambiguousInBase.add(baseVertices.get(vc));
+            }
+        }
+
+        final Map<Token, List<VariantGraph.Vertex>> allMatches = new HashMap<>();
+        final Set<Token> unmatchedInWitness = new LinkedHashSet<>();
+        final Set<Token> ambiguousInWitness = new LinkedHashSet<>();
+        final Set<Token> uniqueInWitness = new LinkedHashSet<>();
+        for (int tc = 0; tc < tokens.size(); tc++) {
+            final Token token = tokens.get(tc);
+            final List<VariantGraph.Vertex> matches = tokenMatches.get(tc);
+            if (matches == null) {
+                unmatchedInWitness.add(token);
+                continue;
+            }
+            allMatches.put(token, Collections.unmodifiableList(matches));
+            // (have to check: base -> witness, and witness -> base)
+            if (matches.size() > 1 || matches.stream().anyMatch(ambiguousInBase::contains)) {
+                ambiguousInWitness.add(token);
+            } else {
+                uniqueInWitness.add(token);
+            }
+        }
 
         return new Matches(allMatches, unmatchedInWitness, ambiguousInWitness, uniqueInWitness);
     }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.matching;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clusters of strings within a given edit distance of each other.
+ * <p>
+ * Strings are clustered in order of descending frequency, ties broken lexicographically: each string joins the
+ * cluster of the nearest leader within the threshold, or leads a new cluster. Leaders are kept in a BK-tree, so
+ * finding the clusters of a vocabulary takes a number of distance computations close to linear in its size. The
+ * result only depends on the clustered strings, and clusters are disjoint, so their ids can serve as token ids.
+ */
+public final class NearMatchClusters {
+
+    private final int threshold;
+
+    // the leading string and its pattern per cluster id
+    private final List<String> leaders = new ArrayList<>();
+    private final List<EditDistance.Pattern> patterns = new ArrayList<>();
+
+    private final Map<String, Integer> clusters = new HashMap<>();
+    private Node root;
+
+    private NearMatchClusters(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public static NearMatchClusters of(Iterable<String> strings, int threshold) {
+        final Map<String, Integer> frequencies = new HashMap<>();
+        for (String str : strings) {
+            frequencies.merge(str, 1, Integer::sum);
+        }
+        final String[] vocabulary = frequencies.keySet().toArray(new String[frequencies.size()]);
+        Arrays.sort(vocabulary, Comparator.<String>comparingInt(frequencies::get).reversed().thenComparing(Comparator.naturalOrder()));
+
+        final NearMatchClusters clusters = new NearMatchClusters(threshold);
+        for (String str : vocabulary) {
+            clusters.add(str);
+        }
+        return clusters;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int size() {
+        return leaders.size();
+    }
+
+    /**
+     * @return the id of the cluster of the given string, or -1 if it has not been clustered
+     */
+    public int id(String str) {
+        return clusters.getOrDefault(str, -1);
+    }
+
+    /**
+     * @return the leading string of the cluster of the given string, or <code>null</code> if it has not been clustered
+     */
+    public String canonical(String str) {
+        final int id = id(str);
+        return (id < 0 ? null : leaders.get(id));
+    }
+
+    private void add(String str) {
+        final int[] nearest = { -1, threshold + 1 };
+        if (root != null) {
+            nearest(root, str, nearest);
+        }
+        if (nearest[0] >= 0) {
+            clusters.put(str, nearest[0]);
+            return;
+        }
+
+        final int id = leaders.size();
+        leaders.add(str);
+        patterns.add(EditDistance.pattern(str));
+        clusters.put(str, id);
+
+        if (root == null) {
+            root = new Node(id);
+            return;
+        }
+        Node node = root;
+        while (true) {
+            final int distance = patterns.get(node.leader).distance(str, Integer.MAX_VALUE);
+            final Node child = node.child(distance);
+            if (child == null) {
+                node.add(distance, new Node(id));
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /*
+     * By the triangle inequality, leaders within the threshold of the string can only be found below children whose
+     * distance to their parent differs from the string's by at most the threshold.
+     */
+    private void nearest(Node root, String str, int[] nearest) {
+        final Deque<Node> nodes = new ArrayDeque<>();
+        nodes.push(root);
+        while (!nodes.isEmpty()) {
+            final Node node = nodes.pop();
+            final int distance = patterns.get(node.leader).distance(str, Integer.MAX_VALUE);
+            if (distance < nearest[1] || (distance == nearest[1] && node.leader < nearest[0])) {
+                nearest[0] = node.leader;
+                nearest[1] = distance;
+            }
+            final int from = Math.max(1, distance - threshold);
+            final int to = Math.min(node.children.length - 1, distance + threshold);
+            for (int d = from; d <= to; d++) {
+                if (node.children[d] != null) {
+                    nodes.push(node.children[d]);
+                }
+            }
+        }
+    }
+
+    private static class Node {
+
+        final int leader;
+
+        // children by their distance to this node's leader
+        Node[] children = new Node[0];
+
+        Node(int leader) {
+            this.leader = leader;
+        }
+
+        Node child(int distance) {
+            return (distance < children.length ? children[distance] : null);
+        }
+
+        void add(int distance, Node child) {
+            if (distance >= children.length) {
+                children = Arrays.copyOf(children, distance + 1);
+            }
+            children[distance] = child;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.matching;
+
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.simple.SimpleToken;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Classes of tokens a comparator considers equal, numbered consecutively from 0 in order of their first occurrence.
+ * <p>
+ * Classes are only available for the known comparators ordering tokens by string equality; tokens are hashed by the
+ * string they are compared by. Algorithms comparing many tokens can thus compare class ids instead of calling the
+ * comparator. Other comparators need not define an equivalence: edit distances are not transitive, and custom
+ * comparators need not order tokens totally, so their tokens have to be compared pairwise.
+ */
+public final class TokenEquivalence {
+
+    private final Comparator<Token> comparator;
+    private final Function<Token, String> key;
+
+    private final Map<String, Integer> keyClasses = new HashMap<>();
+    private final Map<Token, Integer> ids = new IdentityHashMap<>();
+
+    private TokenEquivalence(Comparator<Token> comparator, Function<Token, String> key) {
+        this.comparator = comparator;
+        this.key = key;
+    }
+
+    /**
+     * Assigns classes to the tokens of the given witnesses. Tokens not contained in them are assigned classes when
+     * they are first looked up.
+     *
+     * @return the token classes, or <code>null</code> if the comparator is not known to define an equivalence
+     */
+    public static TokenEquivalence of(Comparator<Token> comparator, Iterable<? extends Iterable<Token>> witnesses) {
+        final Function<Token, String> key = equalityKey(comparator);
+        if (key == null) {
+            return null;
+        }
+        final TokenEquivalence equivalence = new TokenEquivalence(comparator, key);
+        for (Iterable<Token> witness : witnesses) {
+            witness.forEach(equivalence::id);
+        }
+        return equivalence;
+    }
+
+    /**
+     * @return the string the given comparator compares tokens by, if it is one of the known comparators ordering tokens
+     * by string equality, <code>null</code> otherwise
+     */
+    public static Function<Token, String> equalityKey(Comparator<Token> comparator) {
+        if (comparator.getClass() == EqualityTokenComparator.class) {
+            return token -> ((SimpleToken) token).getNormalized();
+        }
+        if (comparator.getClass() == StrictEqualityTokenComparator.class) {
+            return token -> ((SimpleToken) token).getContent();
+        }
+        return null;
+    }
+
+    /**
+     * @return the {@link #equalityKey(Comparator) equality key} of the given comparator, the leader of their
+     * near-match cluster among the given tokens for edit distance comparators, <code>null</code> otherwise
+     */
+    public static Function<Token, String> key(Comparator<Token> comparator, Iterable<Token> tokens) {
+        if (comparator.getClass() == EditDistanceTokenComparator.class) {
+            // edit distances do not order tokens transitively, so tokens are clustered once instead
+            final NearMatchClusters clusters = ((EditDistanceTokenComparator) comparator).cluster(tokens);
+            return token -> {
+                final String normalized = ((SimpleToken) token).getNormalized();
+                final String leader = clusters.canonical(normalized);
+                return (leader == null ? normalized : leader);
+            };
+        }
+        return equalityKey(comparator);
+    }
+
+    public Comparator<Token> comparator() {
+        return comparator;
+    }
+
+    /**
+     * @return the number of classes assigned so far
+     */
+    public int size() {
+        return keyClasses.size();
+    }
+
+    public int id(Token token) {
+        Integer id = ids.get(token);
+        if (id == null) {
+            id = keyClasses.computeIfAbsent(key.apply(token), k -> keyClasses.size());
+            ids.put(token, id);
+        }
+        return id;
+    }
+
+    public boolean equivalent(Token a, Token b) {
+        return id(a) == id(b);
+    }
+}
@@ -22,131 +22,239 @@ package eu.interedition.collatex.medite;
 import eu.interedition.collatex.util.VertexMatch;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.PriorityQueue;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.function.Function;
 
 /**
+ * Decides which of a set of maximal unique matches to align, by an A* search for the cheapest series of decisions, the
+ * cost of a decision against a match being its value.
+ * <p>
+ * There are two nodes per match, one for aligning it and one for not aligning it, so nodes are numbered. A node is
+ * opened again whenever it is reached while it is not open, so every path reaching a node is an instance of it; the
+ * cost, estimate and preceding instance of every instance are kept in arrays. Open instances are kept in a binary heap
+ * indexed by node, which orders them, removes and adds them like a {@link java.util.PriorityQueue} ordered by
+ * estimate, so matches of equal value are decided on as before. The estimated cost of the decisions following a
+ * match, i.e. the value of the following matches that cannot be aligned to its right, is computed for all matches at
+ * once.
+ *
  * @author <a href="http://gregor.middell.net/">Gregor Middell</a>
  */
 public class AlignmentDecisionGraph {
 
-    private final List<SortedSet<VertexMatch.WithTokenIndex>> matches;
-    private final Function<SortedSet<VertexMatch.WithTokenIndex>, Integer> matchEvaluator;
-    private final PriorityQueue<Node> bestPaths;
-    private final Map<Node, Integer> minCosts;
+    private static final int START = 0;
+    private static final int NOT_OPEN = -1;
+
+    private final int matchCount;
+    private final int[] values;
+    private final int[] heuristicCosts;
+
+    // per node: its open instance, or NOT_OPEN, and the position of that instance in the heap
+    private final int[] open;
+    private final int[] heapIndex;
+
+    // per instance: its node, the cost of its path, its estimated total cost and the instance preceding it on its path
+    private int[] nodes;
+    private int[] costs;
+    private int[] estimates;
+    private int[] previous;
+    private int instanceCount;
+
+    private final int[] heap;
+    private int heapSize;
 
     AlignmentDecisionGraph(List<SortedSet<VertexMatch.WithTokenIndex>> matches, Function<SortedSet<VertexMatch.WithTokenIndex>, Integer> matchEvaluator) {
-        this.matches = matches;
-        this.matchEvaluator = matchEvaluator;
-        this.bestPaths = new PriorityQueue<>(matches.size(), Comparator.comparingInt(n -> n.cost));
-        this.minCosts = new HashMap<>();
+        this.matchCount = matches.size();
+        this.values = new int[matchCount];
+        for (int mc = 0; mc < matchCount; mc++) {
+            values[mc] = matchEvaluator.apply(matches.get(mc));
+        }
+        this.heuristicCosts = heuristicCosts(matches, values);
+
+        final int nodeCount = 2 * (matchCount + 1);
+        this.open = new int[nodeCount];
+        Arrays.fill(open, NOT_OPEN);
+        this.heapIndex = new int[nodeCount];
+        this.heap = new int[nodeCount];
+
+        this.nodes = new int[nodeCount];
+        this.costs = new int[nodeCount];
+        this.estimates = new int[nodeCount];
+        this.previous = new int[nodeCount];
     }
 
     static SortedSet<SortedSet<VertexMatch.WithTokenIndex>> filter(SortedSet<SortedSet<VertexMatch.WithTokenIndex>> matches, Function<SortedSet<VertexMatch.WithTokenIndex>, Integer> matchEvaluator) {
         final SortedSet<SortedSet<VertexMatch.WithTokenIndex>> alignments = new TreeSet<>(VertexMatch.<VertexMatch.WithTokenIndex>setComparator());
 
         final List<SortedSet<VertexMatch.WithTokenIndex>> matchList = new ArrayList<>(matches);
-        Node optimal = new AlignmentDecisionGraph(matchList, matchEvaluator).findBestPath();
-        while (optimal.matchIndex >= 0) {
-            if (optimal.aligned) {
-                alignments.add(matchList.get(optimal.matchIndex));
+        final AlignmentDecisionGraph graph = new AlignmentDecisionGraph(matchList, matchEvaluator);
+        for (int instance = graph.findBestPath(); graph.nodes[instance] != START; instance = graph.previous[instance]) {
+            if (aligned(graph.nodes[instance])) {
+                alignments.add(matchList.get(matchIndex(graph.nodes[instance])));
             }
-            optimal = optimal.previous;
         }
         return alignments;
     }
 
-    private Node findBestPath() {
-        bestPaths.add(new Node(-1, false));
-        while (!bestPaths.isEmpty()) {
-            final Node current = bestPaths.remove();
-            if (current.matchIndex == matches.size() - 1) {
+    // nodes are numbered by match and decision; the start node precedes the first match
+    private static int node(int matchIndex, boolean aligned) {
+        return 2 * (matchIndex + 1) + (aligned ? 1 : 0);
+    }
+
+    private static int matchIndex(int node) {
+        return (node / 2) - 1;
+    }
+
+    private static boolean aligned(int node) {
+        return (node % 2) == 1;
+    }
+
+    private int findBestPath() {
+        push(instance(START, 0, 0, NOT_OPEN));
+        while (heapSize > 0) {
+            final int current = pop();
+            final int matchIndex = matchIndex(nodes[current]);
+            if (matchIndex == matchCount - 1) {
                 return current;
             }
-            for (Node successor : current.successors()) {
-                final int tentativeCost = cost(current) + cost(successor);
-                if (bestPaths.contains(successor) && tentativeCost >= minCosts.get(successor)) {
-                    continue;
+            for (boolean aligned : new boolean[]{true, false}) {
+                final int successor = node(matchIndex + 1, aligned);
+                final int tentativeCost = costs[current] + (aligned ? 0 : values[matchIndex + 1]);
+                if (open[successor] != NOT_OPEN) {
+                    if (tentativeCost >= costs[open[successor]]) {
+                        continue;
+                    }
+                    removeAt(heapIndex[successor]);
                 }
-                minCosts.put(successor, tentativeCost);
-
-                successor.cost = tentativeCost + heuristicCost(successor);
-                successor.previous = current;
-                bestPaths.remove(successor);
-                bestPaths.add(successor);
+                push(instance(successor, tentativeCost, tentativeCost + heuristicCosts[matchIndex + 1], current));
             }
         }
         throw new IllegalStateException("No optimal alignment found");
     }
 
-    private int heuristicCost(Node path) {
-        final SortedSet<VertexMatch.WithTokenIndex> evaluated = matches.get(path.matchIndex);
-        final VertexMatch.WithTokenIndex lastMatch = evaluated.last();
+    private int instance(int node, int cost, int estimate, int predecessor) {
+        if (instanceCount == nodes.length) {
+            final int capacity = 2 * instanceCount;
+            nodes = Arrays.copyOf(nodes, capacity);
+            costs = Arrays.copyOf(costs, capacity);
+            estimates = Arrays.copyOf(estimates, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+        }
+        nodes[instanceCount] = node;
+        costs[instanceCount] = cost;
+        estimates[instanceCount] = estimate;
+        previous[instanceCount] = predecessor;
+        return instanceCount++;
+    }
+
+    /*
+     * The value of the following matches that cannot be aligned anymore once a match is decided on, i.e. that do not
+     * lie to the right of its last vertex and token.
+     *
+     * The maximal unique matches of MEDITE are ordered by and do not overlap in their vertex ranks, so all following
+     * matches lie to the right of a match's last vertex, and only the tokens have to be compared: a sweep from the last
+     * match backwards adds the value of each match at its first token to a Fenwick tree, which sums up the values of the
+     * following matches starting at or before a given token. Other matches are compared with each other directly.
+     */
+    static int[] heuristicCosts(List<SortedSet<VertexMatch.WithTokenIndex>> matches, int[] values) {
+        final int matchCount = matches.size();
+        final int[] heuristicCosts = new int[matchCount];
 
-        int cost = 0;
-        for (SortedSet<VertexMatch.WithTokenIndex> following : matches.subList(path.matchIndex + 1, matches.size())) {
-            final VertexMatch.WithTokenIndex followingFirstMatch = following.first();
-            if (lastMatch.vertexRank < followingFirstMatch.vertexRank && lastMatch.token < followingFirstMatch.token) {
-                // we still can align this following match as the matched components are to the right of this path's last match
-                continue;
+        int maxToken = 0;
+        boolean orderedByRank = true;
+        for (int mc = 0; mc < matchCount; mc++) {
+            final SortedSet<VertexMatch.WithTokenIndex> match = matches.get(mc);
+            maxToken = Math.max(maxToken, Math.max(match.first().token, match.last().token));
+            if (mc > 0 && matches.get(mc - 1).last().vertexRank >= match.first().vertexRank) {
+                orderedByRank = false;
             }
-            // we cannot align this following match, so add it to the cost
-            cost += value(following);
         }
-        return cost;
-    }
 
-    private int cost(Node current) {
-        int cost = 0;
-        while (current != null && current.matchIndex >= 0) {
-            if (!current.aligned) {
-                cost += value(matches.get(current.matchIndex));
+        if (!orderedByRank) {
+            for (int mc = 0; mc < matchCount; mc++) {
+                final VertexMatch.WithTokenIndex lastMatch = matches.get(mc).last();
+                for (int following = mc + 1; following < matchCount; following++) {
+                    final VertexMatch.WithTokenIndex followingFirstMatch = matches.get(following).first();
+                    if (lastMatch.vertexRank < followingFirstMatch.vertexRank && lastMatch.token < followingFirstMatch.token) {
+                        continue;
+                    }
+                    heuristicCosts[mc] += values[following];
+                }
             }
-            current = current.previous;
+            return heuristicCosts;
         }
-        return cost;
-    }
 
-    private int value(SortedSet<VertexMatch.WithTokenIndex> match) {
-        return matchEvaluator.apply(match);
+        final int[] valuesByFirstToken = new int[maxToken + 2];
+        for (int mc = matchCount - 1; mc >= 0; mc--) {
+            final SortedSet<VertexMatch.WithTokenIndex> match = matches.get(mc);
+            for (int t = match.last().token + 1; t > 0; t -= t & -t) {
+                heuristicCosts[mc] += valuesByFirstToken[t];
+            }
+            for (int t = match.first().token + 1; t < valuesByFirstToken.length; t += t & -t) {
+                valuesByFirstToken[t] += values[mc];
+            }
+        }
+        return heuristicCosts;
     }
 
-    static class Node {
-        final int matchIndex;
-        final boolean aligned;
-        Node previous;
-        int cost;
+    private void push(int instance) {
+        open[nodes[instance]] = instance;
+        siftUp(heapSize++, instance);
+    }
 
-        Node(int matchIndex, boolean aligned) {
-            this.matchIndex = matchIndex;
-            this.aligned = aligned;
+    private int pop() {
+        final int top = heap[0];
+        open[nodes[top]] = NOT_OPEN;
+        final int last = heap[--heapSize];
+        if (heapSize > 0) {
+            siftDown(0, last);
         }
+        return top;
+    }
 
-        Node[] successors() {
-            final int nextIndex = matchIndex + 1;
-            return new Node[]{new Node(nextIndex, true), new Node(nextIndex, false)};
+    private void removeAt(int index) {
+        open[nodes[heap[index]]] = NOT_OPEN;
+        final int last = heap[--heapSize];
+        if (index < heapSize) {
+            siftDown(index, last);
+            if (heap[index] == last) {
+                siftUp(index, last);
+            }
         }
+    }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (obj != null && obj instanceof Node) {
-                final Node other = (Node) obj;
-                return (matchIndex == other.matchIndex) && (aligned == other.aligned);
+    private void siftUp(int index, int instance) {
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (estimates[instance] >= estimates[heap[parent]]) {
+                break;
             }
-            return super.equals(obj);
+            place(index, heap[parent]);
+            index = parent;
         }
+        place(index, instance);
+    }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(matchIndex, aligned);
+    private void siftDown(int index, int instance) {
+        final int half = heapSize >>> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            if (child + 1 < heapSize && estimates[heap[child]] > estimates[heap[child + 1]]) {
+                child++;
+            }
+            if (estimates[instance] <= estimates[heap[child]]) {
+                break;
+            }
+            place(index, heap[child]);
+            index = child;
         }
+        place(index, instance);
     }
 
+    private void place(int index, int instance) {
+        heap[index] = instance;
+        heapIndex[nodes[instance]] = index;
+    }
 }
@@ -23,15 +23,17 @@ import eu.interedition.collatex.Token;
 import eu.interedition.collatex.VariantGraph;
 import eu.interedition.collatex.util.VertexMatch;
 
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -47,61 +49,52 @@ public class Matches extends ArrayList<SortedSet<VertexMatch.WithTokenIndex>> {
         super(initialCapacity);
     }
 
+    /*
+     * Match threads follow the variant graph rank by rank, so only the threads ending at the previous rank are kept
+     * while advancing them. The phrases of each thread are derived from those of the thread it advanced, and emitted
+     * as soon as the thread is.
+     */
     public static Matches between(VariantGraph.Vertex[][] vertices, SuffixTree<Token> suffixTree, Function<SortedSet<VertexMatch.WithTokenIndex>, Integer> matchEvaluator) {
 
-        final Map<Integer, List<MatchThreadElement>> matchThreads = new HashMap<>();
+        final Matches matches = new Matches(vertices.length);
+        List<MatchThreadElement> previousRank = Collections.emptyList();
         for (int rank = 0; rank < vertices.length; rank++) {
+            final List<MatchThreadElement> currentRank = new ArrayList<>();
             for (VariantGraph.Vertex vertex : vertices[rank]) {
                 final MatchThreadElement matchThreadElement = new MatchThreadElement(suffixTree).advance(vertex, rank);
                 if (matchThreadElement != null) {
-                    matchThreads.computeIfAbsent(rank, r -> new LinkedList<>()).add(matchThreadElement);
+                    currentRank.add(matchThreadElement);
                 }
             }
-            for (MatchThreadElement matchThreadElement : matchThreads.getOrDefault(rank - 1, Collections.emptyList())) {
+            for (MatchThreadElement matchThreadElement : previousRank) {
                 for (VariantGraph.Vertex vertex : vertices[rank]) {
                     final MatchThreadElement advanced = matchThreadElement.advance(vertex, rank);
                     if (advanced != null) {
-                        matchThreads.computeIfAbsent(rank, r -> new LinkedList<>()).add(advanced);
+                        currentRank.add(advanced);
                     }
                 }
             }
-        }
-
-        final Matches matches = new Matches(matchThreads.size());
-        matchThreads.values().stream().flatMap(List::stream).forEach(matchThreadElement -> {
-            final List<SortedSet<VertexMatch.WithTokenIndex>> threadPhrases = new ArrayList<>();
-            boolean firstElement = true;
-            for (MatchThreadElement threadElement : matchThreadElement.thread()) {
-                final SuffixTree<Token>.EquivalenceClass equivalenceClass = threadElement.cursor.matchedClass();
-                for (int mc = 0; mc < equivalenceClass.length; mc++) {
-                    final int tokenCandidate = equivalenceClass.members[mc];
-                    if (firstElement) {
-                        final SortedSet<VertexMatch.WithTokenIndex> phrase = new TreeSet<>();
-                        phrase.add(new VertexMatch.WithTokenIndex(threadElement.vertex, threadElement.vertexRank, tokenCandidate));
-                        threadPhrases.add(phrase);
-                    } else {
-                        for (SortedSet<VertexMatch.WithTokenIndex> phrase : threadPhrases) {
-                            if ((phrase.last().token + 1) == tokenCandidate) {
-                                phrase.add(new VertexMatch.WithTokenIndex(threadElement.vertex, threadElement.vertexRank, tokenCandidate));
-                            }
-                        }
-                    }
-                }
-                firstElement = false;
+            for (MatchThreadElement matchThreadElement : currentRank) {
+                matches.addAll(Arrays.asList(matchThreadElement.phrases()));
             }
-            matches.addAll(threadPhrases);
-        });
+            for (MatchThreadElement matchThreadElement : previousRank) {
+                matchThreadElement.phrases = null;
+            }
+            previousRank = currentRank;
+        }
         Collections.sort(matches, maximalUniqueMatchOrdering(matchEvaluator));
 
         return matches;
     }
 
     private static Comparator<SortedSet<VertexMatch.WithTokenIndex>> maximalUniqueMatchOrdering(final Function<SortedSet<VertexMatch.WithTokenIndex>, Integer> matchEvaluator) {
+        // phrases are evaluated once; threads share phrases that the following elements did not extend
+        final Map<SortedSet<VertexMatch.WithTokenIndex>, Integer> values = new IdentityHashMap<>();
         return new Comparator<SortedSet<VertexMatch.WithTokenIndex>>() {
             @Override
             public int compare(SortedSet<VertexMatch.WithTokenIndex> o1, SortedSet<VertexMatch.WithTokenIndex> o2) {
                 // 1. reverse ordering by match value
-                int result = matchEvaluator.apply(o2) - matchEvaluator.apply(o1);
+                int result = values.computeIfAbsent(o2, matchEvaluator) - values.computeIfAbsent(o1, matchEvaluator);
                 if (result != 0) {
                     return result;
                 }
@@ -177,6 +170,9 @@ public class Matches extends ArrayList<SortedSet<VertexMatch.WithTokenIndex>> {
         final int vertexRank;
         final SuffixTree<Token>.Cursor cursor;
 
+        // the phrases of the thread ending with this element, kept while the thread may still be advanced
+        SortedSet<VertexMatch.WithTokenIndex>[] phrases;
+
         MatchThreadElement(SuffixTree<Token> suffixTree) {
             this(null, null, -1, suffixTree.cursor());
         }
@@ -199,14 +195,41 @@ public class Matches extends ArrayList<SortedSet<VertexMatch.WithTokenIndex>> {
             return null;
         }
 
-        List<MatchThreadElement> thread() {
-            final LinkedList<MatchThreadElement> thread = new LinkedList<>();
-            MatchThreadElement current = this;
-            while (current.vertex != null) {
-                thread.addFirst(current);
-                current = current.previous;
+        /*
+         * Each token matched by the first element of the thread starts a phrase, which each following element extends
+         * if it matches the token after the phrase's last one.
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        SortedSet<VertexMatch.WithTokenIndex>[] phrases() {
+            if (phrases != null) {
+                return phrases;
+            }
+            final SuffixTree<Token>.EquivalenceClass equivalenceClass = cursor.matchedClass();
+            if (previous.vertex == null) {
+                phrases = new SortedSet[equivalenceClass.length];
+                for (int mc = 0; mc < equivalenceClass.length; mc++) {
+                    phrases[mc] = new Phrase(this, this, equivalenceClass.member(mc), 1);
+                }
+                return phrases;
+            }
+            phrases = previous.phrases().clone();
+            for (int pc = 0; pc < phrases.length; pc++) {
+                final SortedSet<VertexMatch.WithTokenIndex> phrase = phrases[pc];
+                final int nextToken = phrase.last().token + 1;
+                if (!equivalenceClass.contains(nextToken)) {
+                    continue;
+                }
+                if (phrase instanceof Phrase && ((Phrase) phrase).last == previous) {
+                    final Phrase contiguous = (Phrase) phrase;
+                    phrases[pc] = new Phrase(contiguous.first, this, contiguous.firstToken, contiguous.length + 1);
+                } else {
+                    // a phrase that was not extended by the preceding element skips its rank
+                    final SortedSet<VertexMatch.WithTokenIndex> extended = new TreeSet<>(phrase);
+                    extended.add(new VertexMatch.WithTokenIndex(vertex, vertexRank, nextToken));
+                    phrases[pc] = extended;
+                }
             }
-            return thread;
+            return phrases;
         }
 
         @Override
@@ -214,4 +237,105 @@ public class Matches extends ArrayList<SortedSet<VertexMatch.WithTokenIndex>> {
             return "[" + Arrays.asList(vertexRank, vertex, cursor.matchedClass()).stream().map(Object::toString).collect(Collectors.joining(", ")) + "]";
         }
     }
+
+    /**
+     * A phrase of consecutive tokens matched by consecutive elements of a match thread, from its first element to a
+     * following one.
+     */
+    static class Phrase extends AbstractSet<VertexMatch.WithTokenIndex> implements SortedSet<VertexMatch.WithTokenIndex> {
+
+        final MatchThreadElement first;
+        final MatchThreadElement last;
+        final int firstToken;
+        final int length;
+        final VertexMatch.WithTokenIndex firstMatch;
+        final VertexMatch.WithTokenIndex lastMatch;
+
+        Phrase(MatchThreadElement first, MatchThreadElement last, int firstToken, int length) {
+            this.first = first;
+            this.last = last;
+            this.firstToken = firstToken;
+            this.length = length;
+            this.firstMatch = new VertexMatch.WithTokenIndex(first.vertex, first.vertexRank, firstToken);
+            this.lastMatch = (length == 1 ? firstMatch : new VertexMatch.WithTokenIndex(last.vertex, last.vertexRank, firstToken + length - 1));
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (o instanceof VertexMatch) {
+                final int vertexRank = ((VertexMatch) o).vertexRank;
+                return (vertexRank >= first.vertexRank && vertexRank <= last.vertexRank);
+            }
+            return false;
+        }
+
+        @Override
+        public Iterator<VertexMatch.WithTokenIndex> iterator() {
+            final MatchThreadElement[] elements = new MatchThreadElement[length];
+            MatchThreadElement element = last;
+            for (int ec = length - 1; ec >= 0; ec--) {
+                elements[ec] = element;
+                element = element.previous;
+            }
+            return new Iterator<VertexMatch.WithTokenIndex>() {
+                int next = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return next < elements.length;
+                }
+
+                @Override
+                public VertexMatch.WithTokenIndex next() {
+                    if (next == elements.length) {
+                        throw new NoSuchElementException();
+                    }
+                    final int index = next++;
+                    if (index == 0) {
+                        return firstMatch;
+                    }
+                    if (index == elements.length - 1) {
+                        return lastMatch;
+                    }
+                    final MatchThreadElement element = elements[index];
+                    return new VertexMatch.WithTokenIndex(element.vertex, element.vertexRank, firstToken + index);
+                }
+            };
+        }
+
+        @Override
+        public Comparator<? super VertexMatch.WithTokenIndex> comparator() {
+            return null;
+        }
+
+        @Override
+        public VertexMatch.WithTokenIndex first() {
+            return firstMatch;
+        }
+
+        @Override
+        public VertexMatch.WithTokenIndex last() {
+            return lastMatch;
+        }
+
+        @Override
+        public SortedSet<VertexMatch.WithTokenIndex> subSet(VertexMatch.WithTokenIndex fromElement, VertexMatch.WithTokenIndex toElement) {
+            return new TreeSet<>(this).subSet(fromElement, toElement);
+        }
+
+        @Override
+        public SortedSet<VertexMatch.WithTokenIndex> headSet(VertexMatch.WithTokenIndex toElement) {
+            return new TreeSet<>(this).headSet(toElement);
+        }
+
+        @Override
+        public SortedSet<VertexMatch.WithTokenIndex> tailSet(VertexMatch.WithTokenIndex fromElement) {
+            return new TreeSet<>(this).tailSet(fromElement);
+        }
+    }
 }
@@ -22,6 +22,7 @@ package eu.interedition.collatex.medite;
 import eu.interedition.collatex.CollationAlgorithm;
 import eu.interedition.collatex.Token;
 import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.matching.TokenEquivalence;
 import eu.interedition.collatex.util.VariantGraphRanking;
 import eu.interedition.collatex.util.VertexMatch;
 
@@ -42,6 +43,7 @@ public class MediteAlgorithm extends CollationAlgorithm.Base {
     private final Function<SortedSet<VertexMatch.WithToken>, Integer> matchEvaluator;
 
     public MediteAlgorithm(Comparator<Token> comparator, Function<SortedSet<VertexMatch.WithToken>, Integer> matchEvaluator) {
+        super(comparator);
         this.comparator = comparator;
         this.matchEvaluator = matchEvaluator;
     }
@@ -51,7 +53,10 @@ public class MediteAlgorithm extends CollationAlgorithm.Base {
         final VariantGraph.Vertex[][] vertices = VariantGraphRanking.of(graph).asArray();
         final Token[] tokens = StreamSupport.stream(witness.spliterator(), false).toArray(Token[]::new);
 
-        final SuffixTree<Token> suffixTree = SuffixTree.build(comparator, tokens);
+        final TokenEquivalence equivalence = equivalence(witness);
+        final SuffixTree<Token> suffixTree = (equivalence == null
+            ? SuffixTree.build(comparator, tokens)
+            : SuffixTree.buildById(equivalence::id, tokens));
         final MatchEvaluatorWrapper matchEvaluator = new MatchEvaluatorWrapper(this.matchEvaluator, tokens);
 
         final Matches matchCandidates = Matches.between(vertices, suffixTree, matchEvaluator);
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.medite;
+
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.util.VariantGraphRanking;
+import eu.interedition.collatex.util.VertexMatch;
+
+import java.util.Comparator;
+import java.util.SortedSet;
+import java.util.function.Function;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs the phases of {@link MediteAlgorithm} one at a time, for the alignment of a witness against a variant graph.
+ * <p>
+ * Lets the phases be timed in isolation from outside of this package, e.g. by benchmarks, without making them public.
+ * Each phase works on the results of the preceding ones, computed once when this object is created; the maximal unique
+ * matches are those of the first round of the algorithm.
+ */
+public class MeditePhases {
+
+    private final VariantGraph.Vertex[][] vertices;
+    private final Token[] tokens;
+    private final Comparator<Token> comparator;
+    private final MediteAlgorithm.MatchEvaluatorWrapper matchEvaluator;
+    private final SuffixTree<Token> suffixTree;
+    private final Matches matches;
+    private final SortedSet<SortedSet<VertexMatch.WithTokenIndex>> maximalUniqueMatches;
+
+    public MeditePhases(VariantGraph graph, Iterable<Token> witness, Comparator<Token> comparator, Function<SortedSet<VertexMatch.WithToken>, Integer> matchEvaluator) {
+        this.vertices = VariantGraphRanking.of(graph).asArray();
+        this.tokens = StreamSupport.stream(witness.spliterator(), false).toArray(Token[]::new);
+        this.comparator = comparator;
+        this.matchEvaluator = new MediteAlgorithm.MatchEvaluatorWrapper(matchEvaluator, tokens);
+        this.suffixTree = SuffixTree.build(comparator, tokens);
+        this.matches = Matches.between(vertices, suffixTree, this.matchEvaluator);
+        this.maximalUniqueMatches = matches.findMaximalUniqueMatches();
+    }
+
+    /**
+     * @return the suffix tree of the witness, opaque to callers
+     */
+    public Object suffixTree() {
+        return SuffixTree.build(comparator, tokens);
+    }
+
+    public Matches matches() {
+        return Matches.between(vertices, suffixTree, matchEvaluator);
+    }
+
+    public SortedSet<SortedSet<VertexMatch.WithTokenIndex>> maximalUniqueMatches() {
+        return matches.findMaximalUniqueMatches();
+    }
+
+    public SortedSet<SortedSet<VertexMatch.WithTokenIndex>> decision() {
+        return AlignmentDecisionGraph.filter(maximalUniqueMatches, matchEvaluator);
+    }
+}
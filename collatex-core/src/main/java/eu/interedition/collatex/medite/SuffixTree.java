@@ -19,44 +19,108 @@
 
 package eu.interedition.collatex.medite;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
+import eu.interedition.collatex.suffixarray.SAIS;
+import eu.interedition.collatex.suffixarray.SuffixArrays;
+import eu.interedition.collatex.suffixarray.SuffixData;
+
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Deque;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
+ * A suffix tree of a sequence of symbols, built in linear time from its suffix array and LCP array.
+ * <p>
+ * Symbols are interned as ids, by their comparator or by a given id function. The sequence is terminated by a
+ * sentinel, so every suffix ends in a leaf. Leaves are numbered by their position in the suffix array, inner nodes
+ * follow; each node spans the interval of the suffix array containing the suffixes below it, and children are looked
+ * up by node and symbol id in a hash table. A {@link Cursor} is a position on an edge, i.e. a prefix of some
+ * suffixes; its {@link EquivalenceClass} holds the end positions of all occurrences of that prefix.
+ *
  * @author <a href="http://gregor.middell.net/">Gregor Middell</a>
  */
 class SuffixTree<T> {
 
-    final Comparator<T> comparator;
-    final Comparator<Integer> sourceComparator;
     final T[] source;
-    final Node root;
+
+    // the id of every symbol; the sentinel terminating the sequence gets an id above those of its symbols
+    private final ToIntFunction<T> symbolIds;
+    private final int[] ids;
+
+    private final int[] suffixes;
+
+    // string depth and suffix array interval of inner nodes, numbered after the leaves
+    private final int[] depths;
+    private final int[] intervalStarts;
+    private final int[] intervalEnds;
+    private int innerNodes;
+    private final int root;
+
+    // children by parent node and symbol id, in an open-addressing hash table
+    private final long[] childKeys;
+    private final int[] children;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+
+    // the start positions of the suffixes below inner nodes in ascending order, sorted on first use
+    private final int[][] sortedStarts;
 
     @SafeVarargs
     static <T> SuffixTree<T> build(Comparator<T> comparator, T... source) {
-        return new SuffixTree<>(comparator, source).build();
+        final Map<T, Integer> symbols = new TreeMap<>(comparator);
+        for (T symbol : source) {
+            symbols.computeIfAbsent(symbol, s -> symbols.size());
+        }
+        return new SuffixTree<>(symbol -> symbols.getOrDefault(symbol, -1), source);
     }
 
-    @SafeVarargs
-    private SuffixTree(Comparator<T> comparator, T... source) {
-        this.comparator = comparator;
-        this.sourceComparator = new SentinelAwareComparator(comparator);
+    /**
+     * Builds the tree of symbols already interned as non-negative ids, e.g. by a
+     * {@link eu.interedition.collatex.matching.TokenEquivalence}, so looking symbols up does not compare them.
+     */
+    static <T> SuffixTree<T> buildById(ToIntFunction<T> symbolIds, T[] source) {
+        return new SuffixTree<>(symbolIds, source);
+    }
+
+    private SuffixTree(ToIntFunction<T> symbolIds, T[] source) {
+        this.symbolIds = symbolIds;
         this.source = source;
-        this.root = new Node();
+
+        this.ids = new int[source.length + 1];
+        int sentinel = 0;
+        for (int i = 0; i < source.length; i++) {
+            ids[i] = symbolIds.applyAsInt(source[i]);
+            sentinel = Math.max(sentinel, ids[i] + 1);
+        }
+        ids[source.length] = sentinel;
+
+        final SuffixData suffixData = SuffixArrays.createWithLCP(ids, 0, ids.length, new SAIS());
+        this.suffixes = suffixData.getSuffixArray();
+
+        final int nodeCapacity = 2 * ids.length;
+        this.depths = new int[ids.length];
+        this.intervalStarts = new int[ids.length];
+        this.intervalEnds = new int[ids.length];
+        this.childKeys = new long[Integer.highestOneBit(nodeCapacity) * 4];
+        Arrays.fill(childKeys, -1L);
+        this.children = new int[childKeys.length];
+        this.firstChild = new int[nodeCapacity];
+        Arrays.fill(firstChild, -1);
+        this.nextSibling = new int[nodeCapacity];
+        Arrays.fill(nextSibling, -1);
+        this.sortedStarts = new int[ids.length][];
+
+        this.root = innerNode(0, 0);
+        build(suffixData.getLCP());
     }
 
     public Cursor cursor() {
-        return new Cursor();
+        return new Cursor(root, 0);
     }
 
     public Iterable<EquivalenceClass> match(final Iterable<T> str) {
@@ -80,197 +144,205 @@ class SuffixTree<T> {
         };
     }
 
-
-    private SuffixTree<T> build() {
-        for (int suffixStart = 0; suffixStart <= source.length; suffixStart++) {
-            root.addSuffix(suffixStart);
+    /*
+     * Inner nodes are the LCP intervals of the suffix array. Going through the suffixes in order, the intervals deeper
+     * than the common prefix of a suffix and its predecessor are closed and attached to their parents; an interval
+     * starts wherever the common prefix is deeper than the innermost open one.
+     */
+    private void build(int[] lcp) {
+        final int[] open = new int[ids.length + 1];
+        int top = 0;
+        open[top] = root;
+        for (int sc = 1; sc <= ids.length; sc++) {
+            final int commonPrefix = (sc < ids.length ? lcp[sc] : 0);
+            int last = sc - 1;
+            while (depth(open[top]) > commonPrefix) {
+                final int closed = open[top--];
+                attach(closed, last);
+                intervalEnds[closed - ids.length] = sc - 1;
+                last = closed;
+            }
+            if (depth(open[top]) < commonPrefix) {
+                open[++top] = innerNode(commonPrefix, intervalStart(last));
+            }
+            attach(open[top], last);
         }
-        compactNodes(root);
-        return this;
+        intervalEnds[root - ids.length] = ids.length - 1;
     }
 
-    private void compactNodes(Node node) {
-        for (Node child : node.children) {
-            while (child.children.size() == 1) {
-                final Node firstGrandChild = child.children.iterator().next();
-                child.incomingLabel.add(firstGrandChild.incomingLabel.getFirst());
-                child.children = firstGrandChild.children;
-                for (Node formerGrandchild : child.children) {
-                    formerGrandchild.parent = child;
-                }
-            }
-            compactNodes(child);
+    private void attach(int parent, int child) {
+        final int symbol = ids[suffixes[intervalStart(child)] + depth(parent)];
+        final long key = ((long) parent << 32) | symbol;
+        int slot = slot(key);
+        while (childKeys[slot] != -1L) {
+            slot = (slot + 1) & (childKeys.length - 1);
         }
+        childKeys[slot] = key;
+        children[slot] = child;
+        nextSibling[child] = firstChild[parent];
+        firstChild[parent] = child;
     }
 
-    @Override
-    public String toString() {
-        final StringBuilder sb = new StringBuilder();
-        final Deque<Node> nodes = new ArrayDeque<>(Collections.singleton(root));
-        while (!nodes.isEmpty()) {
-            final Node node = nodes.remove();
-            sb.append(IntStream.range(0, node.depth()).mapToObj(i -> "\t").collect(Collectors.joining())).append(node).append("\n");
-            node.children.forEach(nodes::addFirst);
+    private int child(int parent, int symbol) {
+        final long key = ((long) parent << 32) | symbol;
+        for (int slot = slot(key); childKeys[slot] != -1L; slot = (slot + 1) & (childKeys.length - 1)) {
+            if (childKeys[slot] == key) {
+                return children[slot];
+            }
         }
-        return sb.toString();
+        return -1;
     }
 
-    /**
-     * @author <a href="http://gregor.middell.net/">Gregor Middell</a>
-     */
-    class Node {
+    private int slot(long key) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (childKeys.length - 1);
+    }
 
-        final LinkedList<EquivalenceClass> incomingLabel;
+    private int innerNode(int depth, int intervalStart) {
+        final int inner = innerNodes++;
+        depths[inner] = depth;
+        intervalStarts[inner] = intervalStart;
+        return ids.length + inner;
+    }
 
-        Node parent;
-        List<Node> children = new ArrayList<>();
+    private boolean isLeaf(int node) {
+        return node < ids.length;
+    }
 
-        public Node(Node parent, int firstIndex) {
-            this.parent = parent;
-            this.incomingLabel = new LinkedList<>(Collections.singleton(new EquivalenceClass(firstIndex)));
-        }
+    private int depth(int node) {
+        return (isLeaf(node) ? ids.length - suffixes[node] : depths[node - ids.length]);
+    }
 
-        public Node() {
-            this.parent = null;
-            this.incomingLabel = null;
-        }
+    private int intervalStart(int node) {
+        return (isLeaf(node) ? node : intervalStarts[node - ids.length]);
+    }
 
+    private int intervalEnd(int node) {
+        return (isLeaf(node) ? node : intervalEnds[node - ids.length]);
+    }
 
-        public int depth() {
-            int depth = 0;
-            for (Node parent = this.parent; parent != null; parent = parent.parent) {
-                depth++;
-            }
-            return depth;
+    private int[] sortedStarts(int node) {
+        if (isLeaf(node)) {
+            return new int[] { suffixes[node] };
         }
-
-        public void addSuffix(int start) {
-            addSuffix(this, start);
+        int[] starts = sortedStarts[node - ids.length];
+        if (starts == null) {
+            starts = Arrays.copyOfRange(suffixes, intervalStart(node), intervalEnd(node) + 1);
+            Arrays.sort(starts);
+            sortedStarts[node - ids.length] = starts;
         }
+        return starts;
+    }
 
-        private Node addSuffix(Node node, int start) {
-            for (Node child : node.children) {
-                EquivalenceClass childClass = child.incomingLabel.getFirst();
-                if (childClass.isMember(start)) {
-                    childClass.add(start);
-                    start++;
-                    if (start == (source.length + 1)) {
-                        return child;
-                    }
-                    return addSuffix(child, start);
-                }
-            }
-            while (start <= source.length) {
-                Node child = new Node(node, start);
-                node.children.add(child);
-                node = child;
-                start++;
-            }
-            return node;
-        }
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        toString(sb, root, 0);
+        return sb.toString();
+    }
 
-        @Override
-        public String toString() {
-            return Optional.ofNullable(incomingLabel).map(label -> label.stream().map(Object::toString).collect(Collectors.joining(", "))).orElse("");
+    private void toString(StringBuilder sb, int node, int level) {
+        if (node != root) {
+            sb.append(String.join("", Collections.nCopies(level - 1, "\t")));
+            sb.append(new Cursor(node, depth(node)).matchedClass()).append("\n");
+        }
+        for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+            toString(sb, child, level + 1);
         }
     }
 
+    /**
+     * The end positions of the occurrences of a prefix, in order: the sorted start positions of the suffixes sharing
+     * it, shifted by its length.
+     */
     class EquivalenceClass implements Comparable<EquivalenceClass> {
 
-        int[] members = new int[2];
-        int length = 0;
+        private final int[] starts;
+        private final int offset;
+        final int length;
 
-        EquivalenceClass(int first) {
-            members[length++] = first;
+        EquivalenceClass(int[] starts, int offset) {
+            this.starts = starts;
+            this.offset = offset;
+            this.length = starts.length;
         }
 
-        void add(int member) {
-            if (length == members.length) {
-                members = Arrays.copyOf(members, members.length * 2);
-            }
-            members[length++] = member;
+        int member(int index) {
+            return starts[index] + offset;
         }
 
-        boolean isMember(int index) {
-            return sourceComparator.compare(index, members[0]) == 0;
+        boolean contains(int position) {
+            return Arrays.binarySearch(starts, position - offset) >= 0;
+        }
+
+        int[] members() {
+            return Arrays.stream(starts).map(start -> start + offset).toArray();
         }
 
         public boolean isMember(T symbol) {
-            return (members[0] != source.length && comparator.compare(symbol, source[members[0]]) == 0);
+            return (member(0) != source.length && symbolIds.applyAsInt(symbol) == ids[member(0)]);
         }
 
         @Override
         public boolean equals(Object obj) {
             if (obj != null && obj instanceof SuffixTree<?>.EquivalenceClass) {
-                return members[0] == ((SuffixTree<?>.EquivalenceClass) obj).members[0];
+                return member(0) == ((SuffixTree<?>.EquivalenceClass) obj).member(0);
             }
             return super.equals(obj);
         }
 
         @Override
         public int hashCode() {
-            return members[0];
+            return member(0);
         }
 
         @Override
         public int compareTo(EquivalenceClass o) {
-            return (members[0] - o.members[0]);
+            return (member(0) - o.member(0));
         }
 
         @Override
         public String toString() {
-            return String.format("{%s}", Arrays.stream(members, 0, length)
+            return String.format("{%s}", Arrays.stream(members())
                 .mapToObj(member -> "<[" + member + "] " + (member == source.length ? "$" : source[member].toString()) + ">")
                 .collect(Collectors.joining(", ")));
         }
 
     }
 
-    class SentinelAwareComparator implements Comparator<Integer> {
-
-        final Comparator<T> comparator;
-
-        SentinelAwareComparator(Comparator<T> comparator) {
-            this.comparator = comparator;
-        }
-
-        @Override
-        public int compare(Integer o1, Integer o2) {
-            if (o1 == source.length || o2 == source.length) {
-                return (o2 - o1);
-            }
-            return comparator.compare(source[o1], source[o2]);
-        }
-    }
-
+    /**
+     * A prefix of some suffixes, given by the node below it and its length.
+     */
     public class Cursor {
-        final Node node;
-        final int offset;
+        final int node;
+        final int depth;
 
-        Cursor() {
-            this(root, 0);
-        }
+        private EquivalenceClass matchedClass;
 
-        Cursor(Node node, int offset) {
+        Cursor(int node, int depth) {
             this.node = node;
-            this.offset = offset;
+            this.depth = depth;
         }
 
         public Cursor move(T symbol) {
-            if (node.incomingLabel == null || (offset + 1) == node.incomingLabel.size()) {
-                for (Node child : node.children) {
-                    final Cursor next = new Cursor(child, 0);
-                    if (next.matchedClass().isMember(symbol)) {
-                        return next;
-                    }
-                }
+            final int id = symbolIds.applyAsInt(symbol);
+            if (id < 0 || id >= ids[source.length]) {
+                // neither in the sequence nor the sentinel
                 return null;
             }
-            return (node.incomingLabel.get(offset + 1).isMember(symbol) ? new Cursor(node, offset + 1) : null);
+            if (depth == depth(node)) {
+                final int child = child(node, id);
+                return (child < 0 ? null : new Cursor(child, depth + 1));
+            }
+            return (ids[suffixes[intervalStart(node)] + depth] == id ? new Cursor(node, depth + 1) : null);
         }
 
+        // the end positions of all occurrences of the prefix, in order
         EquivalenceClass matchedClass() {
-            return node.incomingLabel.get(offset);
+            if (matchedClass == null) {
+                matchedClass = new EquivalenceClass(sortedStarts(node), depth - 1);
+            }
+            return matchedClass;
         }
     }
 }
@@ -22,6 +22,7 @@ package eu.interedition.collatex.needlemanwunsch;
 import eu.interedition.collatex.CollationAlgorithm;
 import eu.interedition.collatex.Token;
 import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.matching.TokenEquivalence;
 import eu.interedition.collatex.util.VariantGraphRanking;
 
 import java.util.Arrays;
@@ -29,6 +30,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiPredicate;
 import java.util.stream.StreamSupport;
 
 /**
@@ -36,22 +38,42 @@ import java.util.stream.StreamSupport;
  */
 public class NeedlemanWunschAlgorithm extends CollationAlgorithm.Base {
 
-    private final Comparator<Token> comparator;
-    private final NeedlemanWunschScorer<VariantGraph.Vertex[], Token> scorer = new NeedlemanWunschScorer<VariantGraph.Vertex[], Token>() {
-
-        @Override
-        public float score(VariantGraph.Vertex[] a, Token b) {
-            return Arrays.stream(a).map(VariantGraph.Vertex::tokens).flatMap(Set::stream).anyMatch(t -> comparator.compare(t, b) == 0) ? 1 : -1;
-        }
+    /**
+     * How the alignment matrix is computed.
+     */
+    public enum Mode {
+        /**
+         * The whole matrix is kept, in space quadratic to the input. Its borders are scored like
+         * {@link #align(Object[], Object[], NeedlemanWunschScorer)} scores them, so the alignments are the ones
+         * CollateX has always computed.
+         */
+        FULL,
+
+        /**
+         * The alignment is found by divide and conquer in space linear to the input, at about twice the time. Gaps at
+         * the borders are scored like all other gaps, so the alignment may differ from the one of {@link #FULL}.
+         */
+        LINEAR_SPACE,
+
+        /**
+         * Only a band around the diagonal is computed. The band is widened until it is guaranteed to contain an optimal
+         * alignment, so inputs of similar lengths take time and space linear to their size. Gaps are scored like in
+         * {@link #LINEAR_SPACE}.
+         */
+        BANDED
+    }
 
-        @Override
-        public float gap() {
-            return -1;
-        }
-    };
+    private final Comparator<Token> comparator;
+    private final Mode mode;
 
     public NeedlemanWunschAlgorithm(Comparator<Token> comparator) {
+        this(comparator, Mode.FULL);
+    }
+
+    public NeedlemanWunschAlgorithm(Comparator<Token> comparator, Mode mode) {
+        super(comparator);
         this.comparator = comparator;
+        this.mode = mode;
     }
 
     @Override
@@ -59,14 +81,22 @@ public class NeedlemanWunschAlgorithm extends CollationAlgorithm.Base {
         final VariantGraph.Vertex[][] ranks = VariantGraphRanking.of(against).asArray();
         final Token[] tokens = StreamSupport.stream(witness.spliterator(), false).toArray(Token[]::new);
 
+        final TokenEquivalence equivalence = equivalence(witness);
+        final BiPredicate<Token, Token> equal = (equivalence == null
+            ? (a, b) -> comparator.compare(a, b) == 0
+            : equivalence::equivalent);
+
         final Map<Token, VariantGraph.Vertex> alignments = new HashMap<>();
-        for (Map.Entry<VariantGraph.Vertex[], Token> alignment : align(ranks, tokens, scorer).entrySet()) {
+        final int[] alignedRanks = align(ranks, tokens, equivalence);
+        for (int tc = 0; tc < tokens.length; tc++) {
+            if (alignedRanks[tc] < 0) {
+                continue;
+            }
             boolean aligned = false;
-            final Token token = alignment.getValue();
-            for (VariantGraph.Vertex vertex : alignment.getKey()) {
+            for (VariantGraph.Vertex vertex : ranks[alignedRanks[tc]]) {
                 for (Token vertexToken : vertex.tokens()) {
-                    if (comparator.compare(vertexToken, token) == 0) {
-                        alignments.put(token, vertex);
+                    if (equal.test(vertexToken, tokens[tc])) {
+                        alignments.put(tokens[tc], vertex);
                         aligned = true;
                         break;
                     }
@@ -80,6 +110,41 @@ public class NeedlemanWunschAlgorithm extends CollationAlgorithm.Base {
         merge(against, witness, alignments);
     }
 
+    /*
+     * Ranks and tokens are aligned by their token classes, so scoring them does not call the comparator. Without token
+     * classes, the tokens of ranks are compared with the witness' tokens pairwise.
+     */
+    private int[] align(VariantGraph.Vertex[][] ranks, Token[] tokens, TokenEquivalence equivalence) {
+        final RankAlignment alignment;
+        if (equivalence == null) {
+            alignment = new RankAlignment(ranks.length, tokens.length, (rank, token) -> Arrays.stream(ranks[rank])
+                .map(VariantGraph.Vertex::tokens)
+                .flatMap(Set::stream)
+                .anyMatch(t -> comparator.compare(t, tokens[token]) == 0));
+        } else {
+            final int[][] rankIds = new int[ranks.length][];
+            for (int rc = 0; rc < ranks.length; rc++) {
+                rankIds[rc] = Arrays.stream(ranks[rc])
+                    .map(VariantGraph.Vertex::tokens)
+                    .flatMap(Set::stream)
+                    .mapToInt(equivalence::id)
+                    .sorted()
+                    .distinct()
+                    .toArray();
+            }
+            final int[] tokenIds = Arrays.stream(tokens).mapToInt(equivalence::id).toArray();
+            alignment = new RankAlignment(rankIds, tokenIds, equivalence.size());
+        }
+        switch (mode) {
+            case LINEAR_SPACE:
+                return alignment.linearSpace();
+            case BANDED:
+                return alignment.banded();
+            default:
+                return alignment.full();
+        }
+    }
+
     public static <A, B> Map<A, B> align(A[] a, B[] b, NeedlemanWunschScorer<A, B> scorer) {
 
         final Map<A, B> alignments = new HashMap<>();
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.needlemanwunsch;
+
+import java.util.Arrays;
+
+/**
+ * Aligns the ranks of a variant graph with the tokens of a witness, both given as interned token ids or by a predicate
+ * comparing them pairwise.
+ * <p>
+ * A rank matches a token if one of its ids equals the token's id. Matches score 1, mismatches and gaps -1. The result
+ * assigns each token the rank it has been aligned with diagonally, or -1.
+ */
+final class RankAlignment {
+
+    static final int MATCH = 1;
+    static final int MISMATCH = -1;
+    static final int GAP = -1;
+
+    // the initial half width of the band around the diagonal, doubled until the band provably contains the optimum
+    static final int INITIAL_BAND = 16;
+
+    // scores of cells outside the band; low enough to never win, high enough to not overflow when adding gaps
+    private static final int OUTSIDE = Integer.MIN_VALUE / 2;
+
+    /**
+     * Whether a rank matches a token, both given by their index.
+     */
+    interface Matching {
+        boolean matches(int rank, int token);
+    }
+
+    private final int rankCount;
+    private final int tokenCount;
+
+    private final int[][] ranks;
+    private final int[] tokens;
+    private final Matching matching;
+
+    // the generation a token id has last been marked as matching the current rank in
+    private final int[] marks;
+    private int generation = 0;
+    private int rank;
+
+    RankAlignment(int[][] ranks, int[] tokens, int ids) {
+        this.rankCount = ranks.length;
+        this.tokenCount = tokens.length;
+        this.ranks = ranks;
+        this.tokens = tokens;
+        this.matching = null;
+        this.marks = new int[ids];
+    }
+
+    RankAlignment(int rankCount, int tokenCount, Matching matching) {
+        this.rankCount = rankCount;
+        this.tokenCount = tokenCount;
+        this.ranks = null;
+        this.tokens = null;
+        this.matching = matching;
+        this.marks = null;
+    }
+
+    int[] full() {
+        final int[] alignment = unaligned();
+        full(0, rankCount, 0, tokenCount, true, alignment);
+        return alignment;
+    }
+
+    int[] linearSpace() {
+        final int[] alignment = unaligned();
+        linearSpace(0, rankCount, 0, tokenCount, alignment);
+        return alignment;
+    }
+
+    int[] banded() {
+        final int n = rankCount;
+        final int m = tokenCount;
+        for (int band = INITIAL_BAND; ; band *= 2) {
+            final int[] alignment = unaligned();
+            final int score = banded(band, alignment);
+
+            // any path leaving the band takes at least that many gaps, and scores at most the bound
+            final long gaps = Math.abs((long) m - n) + 2L * (band + 1);
+            if (gaps > n + m || score >= ((n + m - gaps) * MATCH) / 2 + gaps * GAP) {
+                return alignment;
+            }
+        }
+    }
+
+    private int[] unaligned() {
+        final int[] alignment = new int[tokenCount];
+        Arrays.fill(alignment, -1);
+        return alignment;
+    }
+
+    /*
+     * Marks the ids of the given rank, so the scores of the following row can be looked up without comparing tokens.
+     */
+    private void mark(int rank) {
+        this.rank = rank;
+        if (matching != null) {
+            return;
+        }
+        if (++generation == 0) {
+            Arrays.fill(marks, 0);
+            generation = 1;
+        }
+        for (int id : ranks[rank]) {
+            marks[id] = generation;
+        }
+    }
+
+    private int score(int token) {
+        if (matching != null) {
+            return (matching.matches(rank, token) ? MATCH : MISMATCH);
+        }
+        return (marks[tokens[token]] == generation ? MATCH : MISMATCH);
+    }
+
+    /*
+     * With shifted borders, the borders are scored like NeedlemanWunschAlgorithm.align() does: each border cell holds the
+     * score of the next one and the last cells are left at 0, so the alignments of Mode.FULL stay unchanged.
+     */
+    private void full(int aFrom, int aTo, int bFrom, int bTo, boolean shiftedBorders, int[] alignment) {
+        final int n = aTo - aFrom;
+        final int m = bTo - bFrom;
+        final int[][] matrix = new int[n + 1][m + 1];
+
+        final int shift = (shiftedBorders ? 1 : 0);
+        for (int ac = 1 - shift; ac <= n - shift; ac++) {
+            matrix[ac][0] = GAP * (ac + shift);
+        }
+        for (int bc = 1 - shift; bc <= m - shift; bc++) {
+            matrix[0][bc] = GAP * (bc + shift);
+        }
+        for (int ac = 1; ac <= n; ac++) {
+            mark(aFrom + ac - 1);
+            final int[] previous = matrix[ac - 1];
+            final int[] row = matrix[ac];
+            for (int bc = 1; bc <= m; bc++) {
+                final int k = previous[bc - 1] + score(bFrom + bc - 1);
+                final int l = previous[bc] + GAP;
+                final int o = row[bc - 1] + GAP;
+                row[bc] = Math.max(Math.max(k, l), o);
+            }
+        }
+
+        int ac = n;
+        int bc = m;
+        while (ac > 0 && bc > 0) {
+            final int score = matrix[ac][bc];
+            if (score == matrix[ac - 1][bc - 1] + diagonal(aFrom + ac - 1, bFrom + bc - 1)) {
+                // match
+                alignment[bFrom + bc - 1] = aFrom + ac - 1;
+                ac--;
+                bc--;
+            } else if (score == matrix[ac - 1][bc] + GAP) {
+                ac--;
+            } else {
+                bc--;
+            }
+        }
+    }
+
+    private int diagonal(int rank, int token) {
+        if (matching != null) {
+            return (matching.matches(rank, token) ? MATCH : MISMATCH);
+        }
+        return (Arrays.binarySearch(ranks[rank], tokens[token]) >= 0 ? MATCH : MISMATCH);
+    }
+
+    /*
+     * Hirschberg's divide and conquer: the middle rank is aligned with the token where the scores of aligning the upper
+     * half forwards and the lower half backwards add up to the optimum. Only two rows of scores are kept per pass.
+     */
+    private void linearSpace(int aFrom, int aTo, int bFrom, int bTo, int[] alignment) {
+        if (aTo - aFrom <= 1 || bTo - bFrom <= 1) {
+            full(aFrom, aTo, bFrom, bTo, false, alignment);
+            return;
+        }
+        final int aMiddle = (aFrom + aTo) >>> 1;
+        final int[] forward = forward(aFrom, aMiddle, bFrom, bTo);
+        final int[] backward = backward(aMiddle, aTo, bFrom, bTo);
+
+        final int m = bTo - bFrom;
+        int split = 0;
+        int best = Integer.MIN_VALUE;
+        for (int bc = 0; bc <= m; bc++) {
+            final int score = forward[bc] + backward[m - bc];
+            if (score > best) {
+                best = score;
+                split = bc;
+            }
+        }
+        linearSpace(aFrom, aMiddle, bFrom, bFrom + split, alignment);
+        linearSpace(aMiddle, aTo, bFrom + split, bTo, alignment);
+    }
+
+    // the scores of aligning the given ranks with each prefix of the given tokens
+    private int[] forward(int aFrom, int aTo, int bFrom, int bTo) {
+        final int m = bTo - bFrom;
+        int[] previous = new int[m + 1];
+        int[] row = new int[m + 1];
+        for (int bc = 1; bc <= m; bc++) {
+            previous[bc] = GAP * bc;
+        }
+        for (int ac = aFrom; ac < aTo; ac++) {
+            mark(ac);
+            row[0] = previous[0] + GAP;
+            for (int bc = 1; bc <= m; bc++) {
+                final int k = previous[bc - 1] + score(bFrom + bc - 1);
+                final int l = previous[bc] + GAP;
+                final int o = row[bc - 1] + GAP;
+                row[bc] = Math.max(Math.max(k, l), o);
+            }
+            final int[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+        return previous;
+    }
+
+    // the scores of aligning the given ranks with each suffix of the given tokens, indexed by suffix length
+    private int[] backward(int aFrom, int aTo, int bFrom, int bTo) {
+        final int m = bTo - bFrom;
+        int[] previous = new int[m + 1];
+        int[] row = new int[m + 1];
+        for (int bc = 1; bc <= m; bc++) {
+            previous[bc] = GAP * bc;
+        }
+        for (int ac = aTo - 1; ac >= aFrom; ac--) {
+            mark(ac);
+            row[0] = previous[0] + GAP;
+            for (int bc = 1; bc <= m; bc++) {
+                final int k = previous[bc - 1] + score(bTo - bc);
+                final int l = previous[bc] + GAP;
+                final int o = row[bc - 1] + GAP;
+                row[bc] = Math.max(Math.max(k, l), o);
+            }
+            final int[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+        return previous;
+    }
+
+    /*
+     * Only cells whose diagonal lies within the given distance of the diagonals leading from the origin and to the end
+     * of the matrix are scored; row ac of the band starts at token ac + offset.
+     */
+    private int banded(int band, int[] alignment) {
+        final int n = rankCount;
+        final int m = tokenCount;
+        final int offset = Math.min(0, m - n) - band;
+        final int width = Math.abs(m - n) + 2 * band + 1;
+        final int[][] matrix = new int[n + 1][width];
+
+        for (int ac = 0; ac <= n; ac++) {
+            final int[] row = matrix[ac];
+            final int[] previous = (ac == 0 ? null : matrix[ac - 1]);
+            if (ac > 0) {
+                mark(ac - 1);
+            }
+            for (int wc = 0; wc < width; wc++) {
+                final int bc = ac + offset + wc;
+                if (bc < 0 || bc > m) {
+                    row[wc] = OUTSIDE;
+                } else if (ac == 0) {
+                    row[wc] = GAP * bc;
+                } else if (bc == 0) {
+                    row[wc] = GAP * ac;
+                } else {
+                    // the diagonal predecessor is in the same band column, the upper one in the next
+                    final int k = previous[wc] + score(bc - 1);
+                    final int l = (wc + 1 < width ? previous[wc + 1] : OUTSIDE) + GAP;
+                    final int o = (wc > 0 ? row[wc - 1] : OUTSIDE) + GAP;
+                    row[wc] = Math.max(Math.max(k, l), o);
+                }
+            }
+        }
+
+        int ac = n;
+        int bc = m;
+        while (ac > 0 && bc > 0) {
+            final int wc = bc - ac - offset;
+            final int score = matrix[ac][wc];
+            if (score == matrix[ac - 1][wc] + diagonal(ac - 1, bc - 1)) {
+                // match
+                alignment[bc - 1] = ac - 1;
+                ac--;
+                bc--;
+            } else if (wc + 1 < width && score == matrix[ac - 1][wc + 1] + GAP) {
+                ac--;
+            } else {
+                bc--;
+            }
+        }
+        return matrix[n][m - n - offset];
+    }
+}
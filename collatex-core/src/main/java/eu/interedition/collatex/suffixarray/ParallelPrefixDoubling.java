@@ -0,0 +1,104 @@
+package eu.interedition.collatex.suffixarray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * Prefix doubling in the manner of <tt>U. Manber and G. Myers. Suffix arrays: a new method for on-line string
+ * searches. SIAM Journal on Computing, 22(5):935–948, 1993</tt>: suffixes are sorted by their first symbol, then
+ * groups of suffixes sharing a prefix of length <code>h</code> are refined by the rank of the suffix <code>h</code>
+ * symbols further, doubling <code>h</code> until all groups are singletons.
+ * <p>
+ * Groups are independent of each other within a round, so they are refined in parallel, using the given fork/join
+ * pool. The number of rounds is logarithmic in the longest repeated substring of the input.
+ * <p>
+ * The input may contain arbitrary symbols; no extra cells are required after <code>start + length</code>.
+ */
+public final class ParallelPrefixDoubling implements ISuffixArrayBuilder {
+
+    private final ForkJoinPool pool;
+
+    public ParallelPrefixDoubling(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public int[] buildSuffixArray(int[] input, int start, int length) {
+        final int[] sa = new int[length];
+        if (length == 0) {
+            return sa;
+        }
+
+        // sort suffixes by their first symbol
+        final long[] keys = new long[length];
+        for (int i = 0; i < length; i++) {
+            keys[i] = ((long) input[start + i] << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        final int[] rank = new int[length];
+        List<int[]> groups = new ArrayList<>();
+        for (int from = 0; from < length; ) {
+            int to = from + 1;
+            while (to < length && (keys[to] >> 32) == (keys[from] >> 32)) {
+                to++;
+            }
+            for (int p = from; p < to; p++) {
+                sa[p] = (int) keys[p];
+                rank[sa[p]] = from;
+            }
+            if (to - from > 1) {
+                groups.add(new int[]{from, to});
+            }
+            from = to;
+        }
+
+        // refine groups of suffixes with equal prefixes of length h by the rank of their suffixes h symbols further
+        int[] current = rank;
+        for (int h = 1; !groups.isEmpty(); h *= 2) {
+            final int[] ranks = current;
+            final int[] refined = current.clone();
+            final int offset = h;
+            final List<int[]> unsorted = groups;
+            groups = pool.submit(() -> unsorted.parallelStream()
+                .flatMap(group -> refine(sa, ranks, refined, offset, group[0], group[1]).stream())
+                .collect(Collectors.toList())
+            ).join();
+            current = refined;
+        }
+        return sa;
+    }
+
+    private static List<int[]> refine(int[] sa, int[] rank, int[] refined, int h, int from, int to) {
+        final int length = rank.length;
+        final long[] keys = new long[to - from];
+        for (int p = from; p < to; p++) {
+            final int suffix = sa[p];
+            final long next = (suffix + h < length ? rank[suffix + h] + 1L : 0L);
+            keys[p - from] = (next << 32) | suffix;
+        }
+        Arrays.sort(keys);
+
+        final List<int[]> groups = new ArrayList<>();
+        for (int g = 0; g < keys.length; ) {
+            int end = g + 1;
+            while (end < keys.length && (keys[end] >>> 32) == (keys[g] >>> 32)) {
+                end++;
+            }
+            for (int k = g; k < end; k++) {
+                final int suffix = (int) keys[k];
+                sa[from + k] = suffix;
+                refined[suffix] = from + g;
+            }
+            if (end - g > 1) {
+                groups.add(new int[]{from + g, from + end});
+            }
+            g = end;
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.util;
+
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.WitnessRegistry;
+import eu.interedition.collatex.WitnessSet;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Stores a variant graph in primitive arrays indexed by {@link VariantGraph.Vertex#id() vertex ids}.
+ * <p>
+ * Edges are kept in forward-star arrays, i.e. per vertex a linked list of outgoing and incoming edge indices threaded
+ * through flat <code>int</code> arrays, which can be modified in place while the graph is built, unlike a CSR layout.
+ * The last edge of each list is kept as well, so that edges are appended in constant time.
+ * The witnesses of an edge are a bitset of their {@link WitnessRegistry registered} ordinals, stored in one
+ * <code>long[]</code> for all edges. Tokens
+ * are kept in an array per vertex, trusting that a token is never added to the same vertex twice.
+ * <p>
+ * Adjacency maps handed out by this storage are read-only views; their witness sets are created on access.
+ */
+public class CompactVariantGraphStorage implements VariantGraph.Storage {
+
+    private static final Token[] NO_TOKENS = new Token[0];
+
+    private VariantGraph.Vertex[] vertices = new VariantGraph.Vertex[64];
+    private Token[][] tokens = new Token[64][];
+    private int[] tokenCounts = new int[64];
+    private int[] firstOut = new int[64];
+    private int[] firstIn = new int[64];
+    private int[] lastOut = new int[64];
+    private int[] lastIn = new int[64];
+    private int[] outDegree = new int[64];
+    private int[] inDegree = new int[64];
+    private int vertexCount = 0;
+
+    private int[] edgeFrom = new int[64];
+    private int[] edgeTo = new int[64];
+    private int[] nextOut = new int[64];
+    private int[] nextIn = new int[64];
+    private int edgeCount = 0;
+    private int freeEdge = -1;
+
+    private long[] labels = new long[64];
+    private int labelWords = 1;
+
+    private WitnessRegistry witnessRegistry;
+
+    @Override
+    public void add(VariantGraph.Vertex vertex) {
+        final int id = vertex.id();
+        if (id != vertexCount) {
+            throw new IllegalArgumentException(vertex.toString());
+        }
+        if (id == vertices.length) {
+            final int capacity = id * 2;
+            vertices = Arrays.copyOf(vertices, capacity);
+            tokens = Arrays.copyOf(tokens, capacity);
+            tokenCounts = Arrays.copyOf(tokenCounts, capacity);
+            firstOut = Arrays.copyOf(firstOut, capacity);
+            firstIn = Arrays.copyOf(firstIn, capacity);
+            lastOut = Arrays.copyOf(lastOut, capacity);
+            lastIn = Arrays.copyOf(lastIn, capacity);
+            outDegree = Arrays.copyOf(outDegree, capacity);
+            inDegree = Arrays.copyOf(inDegree, capacity);
+        }
+        if (id == 0) {
+            witnessRegistry = vertex.graph().witnessRegistry();
+        }
+        vertices[id] = vertex;
+        tokens[id] = NO_TOKENS;
+        firstOut[id] = -1;
+        firstIn[id] = -1;
+        lastOut[id] = -1;
+        lastIn[id] = -1;
+        vertexCount++;
+    }
+
+    @Override
+    public void add(VariantGraph.Vertex vertex, Iterable<Token> tokens) {
+        final int id = vertex.id();
+        Token[] vertexTokens = this.tokens[id];
+        int count = tokenCounts[id];
+        for (Token token : tokens) {
+            if (count == vertexTokens.length) {
+                vertexTokens = Arrays.copyOf(vertexTokens, Math.max(2, count * 2));
+            }
+            vertexTokens[count++] = token;
+        }
+        this.tokens[id] = vertexTokens;
+        tokenCounts[id] = count;
+    }
+
+    @Override
+    public Set<Token> tokens(VariantGraph.Vertex vertex) {
+        final int id = vertex.id();
+        return new AbstractSet<Token>() {
+            @Override
+            public Iterator<Token> iterator() {
+                return Collections.unmodifiableList(Arrays.asList(tokens[id]).subList(0, tokenCounts[id])).iterator();
+            }
+
+            @Override
+            public int size() {
+                return tokenCounts[id];
+            }
+        };
+    }
+
+    @Override
+    public Map<VariantGraph.Vertex, WitnessSet> incoming(VariantGraph.Vertex vertex) {
+        return new Adjacency(vertex.id(), false);
+    }
+
+    @Override
+    public Map<VariantGraph.Vertex, WitnessSet> outgoing(VariantGraph.Vertex vertex) {
+        return new Adjacency(vertex.id(), true);
+    }
+
+    @Override
+    public void connect(VariantGraph.Vertex from, VariantGraph.Vertex to, WitnessSet witnesses) {
+        while (witnesses.wordCount() > labelWords) {
+            widenLabels();
+        }
+        int edge = find(from.id(), to.id());
+        if (edge < 0) {
+            edge = addEdge(from.id(), to.id());
+        }
+        for (int wc = 0, offset = edge * labelWords; wc < witnesses.wordCount(); wc++) {
+            labels[offset + wc] |= witnesses.word(wc);
+        }
+    }
+
+    @Override
+    public WitnessSet disconnect(VariantGraph.Vertex from, VariantGraph.Vertex to) {
+        final int edge = find(from.id(), to.id());
+        if (edge < 0) {
+            return null;
+        }
+        final WitnessSet label = label(edge);
+        removeEdge(edge);
+        return label;
+    }
+
+    private int find(int from, int to) {
+        // scan the shorter of both adjacency lists
+        if (outDegree[from] <= inDegree[to]) {
+            for (int edge = firstOut[from]; edge >= 0; edge = nextOut[edge]) {
+                if (edgeTo[edge] == to) {
+                    return edge;
+                }
+            }
+        } else {
+            for (int edge = firstIn[to]; edge >= 0; edge = nextIn[edge]) {
+                if (edgeFrom[edge] == from) {
+                    return edge;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int addEdge(int from, int to) {
+        final int edge;
+        if (freeEdge >= 0) {
+            edge = freeEdge;
+            freeEdge = nextOut[edge];
+        } else {
+            if (edgeCount == edgeFrom.length) {
+                final int capacity = edgeCount * 2;
+                edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+                edgeTo = Arrays.copyOf(edgeTo, capacity);
+                nextOut = Arrays.copyOf(nextOut, capacity);
+                nextIn = Arrays.copyOf(nextIn, capacity);
+                labels = Arrays.copyOf(labels, capacity * labelWords);
+            }
+            edge = edgeCount++;
+        }
+        edgeFrom[edge] = from;
+        edgeTo[edge] = to;
+        Arrays.fill(labels, edge * labelWords, (edge + 1) * labelWords, 0L);
+
+        // append, so that adjacency lists are ordered by insertion like the edges of the default storage
+        nextOut[edge] = -1;
+        if (lastOut[from] < 0) {
+            firstOut[from] = edge;
+        } else {
+            nextOut[lastOut[from]] = edge;
+        }
+        lastOut[from] = edge;
+        nextIn[edge] = -1;
+        if (lastIn[to] < 0) {
+            firstIn[to] = edge;
+        } else {
+            nextIn[lastIn[to]] = edge;
+        }
+        lastIn[to] = edge;
+        outDegree[from]++;
+        inDegree[to]++;
+        return edge;
+    }
+
+    private void removeEdge(int edge) {
+        final int from = edgeFrom[edge];
+        final int to = edgeTo[edge];
+
+        int previous = -1;
+        if (firstOut[from] == edge) {
+            firstOut[from] = nextOut[edge];
+        } else {
+            previous = firstOut[from];
+            while (nextOut[previous] != edge) {
+                previous = nextOut[previous];
+            }
+            nextOut[previous] = nextOut[edge];
+        }
+        if (lastOut[from] == edge) {
+            lastOut[from] = previous;
+        }
+        previous = -1;
+        if (firstIn[to] == edge) {
+            firstIn[to] = nextIn[edge];
+        } else {
+            previous = firstIn[to];
+            while (nextIn[previous] != edge) {
+                previous = nextIn[previous];
+            }
+            nextIn[previous] = nextIn[edge];
+        }
+        if (lastIn[to] == edge) {
+            lastIn[to] = previous;
+        }
+        outDegree[from]--;
+        inDegree[to]--;
+
+        edgeFrom[edge] = -1;
+        edgeTo[edge] = -1;
+        nextOut[edge] = freeEdge;
+        freeEdge = edge;
+    }
+
+    private void widenLabels() {
+        final int words = labelWords * 2;
+        final long[] widened = new long[edgeFrom.length * words];
+        for (int edge = 0; edge < edgeCount; edge++) {
+            System.arraycopy(labels, edge * labelWords, widened, edge * words, labelWords);
+        }
+        labels = widened;
+        labelWords = words;
+    }
+
+    private WitnessSet label(int edge) {
+        return witnessRegistry.of(labels, edge * labelWords, (edge + 1) * labelWords);
+    }
+
+    /**
+     * The edges of a vertex in one direction, viewed as a map from adjacent vertices to edge labels.
+     */
+    private class Adjacency extends AbstractMap<VariantGraph.Vertex, WitnessSet> {
+        private final int vertex;
+        private final boolean outgoing;
+
+        private Adjacency(int vertex, boolean outgoing) {
+            this.vertex = vertex;
+            this.outgoing = outgoing;
+        }
+
+        @Override
+        public int size() {
+            return (outgoing ? outDegree[vertex] : inDegree[vertex]);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return edge(key) >= 0;
+        }
+
+        @Override
+        public WitnessSet get(Object key) {
+            final int edge = edge(key);
+            return (edge < 0 ? null : label(edge));
+        }
+
+        private int edge(Object key) {
+            if (!(key instanceof VariantGraph.Vertex)) {
+                return -1;
+            }
+            final VariantGraph.Vertex other = (VariantGraph.Vertex) key;
+            if (other.id() >= vertexCount || vertices[other.id()] != other) {
+                return -1;
+            }
+            return (outgoing ? find(vertex, other.id()) : find(other.id(), vertex));
+        }
+
+        @Override
+        public Set<Entry<VariantGraph.Vertex, WitnessSet>> entrySet() {
+            return new AbstractSet<Entry<VariantGraph.Vertex, WitnessSet>>() {
+                @Override
+                public Iterator<Entry<VariantGraph.Vertex, WitnessSet>> iterator() {
+                    return new Iterator<Entry<VariantGraph.Vertex, WitnessSet>>() {
+                        private int edge = (outgoing ? firstOut[vertex] : firstIn[vertex]);
+
+                        @Override
+                        public boolean hasNext() {
+                            return edge >= 0;
+                        }
+
+                        @Override
+                        public Entry<VariantGraph.Vertex, WitnessSet> next() {
+                            if (edge < 0) {
+                                throw new NoSuchElementException();
+                            }
+                            final int current = edge;
+                            edge = (outgoing ? nextOut[current] : nextIn[current]);
+                            final VariantGraph.Vertex other = vertices[outgoing ? edgeTo[current] : edgeFrom[current]];
+                            return new SimpleImmutableEntry<>(other, label(current));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return Adjacency.this.size();
+                }
+            };
+        }
+    }
+}
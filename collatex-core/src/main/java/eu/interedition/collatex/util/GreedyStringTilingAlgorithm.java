@@ -22,6 +22,7 @@ package eu.interedition.collatex.util;
 import eu.interedition.collatex.CollationAlgorithm;
 import eu.interedition.collatex.Token;
 import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.matching.TokenEquivalence;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -48,6 +49,16 @@ import java.util.stream.StreamSupport;
  */
 public class GreedyStringTilingAlgorithm extends CollationAlgorithm.Base {
 
+    // a rank equals a token if the first token of one of its vertices is of the token's class
+    private static final Equality<int[], Integer> EQUALITY = (rankIds, tokenId) -> {
+        for (int id : rankIds) {
+            if (id == tokenId) {
+                return true;
+            }
+        }
+        return false;
+    };
+
     private final Comparator<Token> comparator;
     private final int minimumTileLength;
 
@@ -66,6 +77,7 @@ public class GreedyStringTilingAlgorithm extends CollationAlgorithm.Base {
     };
 
     public GreedyStringTilingAlgorithm(Comparator<Token> comparator, int minimumTileLength) {
+        super(comparator);
         this.comparator = comparator;
         this.minimumTileLength = minimumTileLength;
     }
@@ -76,7 +88,7 @@ public class GreedyStringTilingAlgorithm extends CollationAlgorithm.Base {
         final Token[] tokens = StreamSupport.stream(witness.spliterator(), false).toArray(Token[]::new);
 
         final SortedSet<SortedSet<VertexMatch.WithTokenIndex>> matches = new TreeSet<>(VertexMatch.<VertexMatch.WithTokenIndex>setComparator());
-        for (Match match : match(vertices, tokens, equality, minimumTileLength)) {
+        for (Match match : match(vertices, tokens, equivalence(witness))) {
             final SortedSet<VertexMatch.WithTokenIndex> phrase = new TreeSet<>();
             for (int mc = 0, ml = match.length; mc < ml; mc++) {
                 final int rank = match.left + mc;
@@ -88,6 +100,25 @@ public class GreedyStringTilingAlgorithm extends CollationAlgorithm.Base {
         merge(graph, vertices, tokens, matches);
     }
 
+    /*
+     * Without token classes, the first tokens of the ranks' vertices are compared with the witness' tokens pairwise.
+     */
+    private SortedSet<Match> match(VariantGraph.Vertex[][] vertices, Token[] tokens, TokenEquivalence equivalence) {
+        if (equivalence == null) {
+            return match(vertices, tokens, equality, minimumTileLength);
+        }
+        final Integer[] tokenIds = Arrays.stream(tokens).map(equivalence::id).toArray(Integer[]::new);
+        final int[][] rankIds = new int[vertices.length][];
+        for (int rank = 0; rank < vertices.length; rank++) {
+            rankIds[rank] = Arrays.stream(vertices[rank])
+                .map(VariantGraph.Vertex::tokens)
+                .filter(vertexTokens -> !vertexTokens.isEmpty())
+                .mapToInt(vertexTokens -> equivalence.id(vertexTokens.iterator().next()))
+                .toArray();
+        }
+        return match(rankIds, tokenIds, EQUALITY, minimumTileLength);
+    }
+
     public static <A, B> SortedSet<Match> match(A[] left, B[] right, Equality<A, B> equality, int minimumTileLength) {
         final boolean[] markedLeft = new boolean[left.length];
         final boolean[] markedRight = new boolean[right.length];
@@ -54,11 +54,7 @@ public class VariantGraphRanking implements Iterable<Set<VariantGraph.Vertex>>,
     public static VariantGraphRanking of(VariantGraph graph) {
         final VariantGraphRanking ranking = new VariantGraphRanking(graph);
         for (VariantGraph.Vertex v : graph.vertices()) {
-            int rank = -1;
-            for (VariantGraph.Vertex incoming : v.incoming().keySet()) {
-                rank = Math.max(rank, ranking.byVertex.get(incoming));
-            }
-            rank++;
+            final int rank = v.rank();
             ranking.byVertex.put(v, rank);
             ranking.byRank.computeIfAbsent(rank, r -> new HashSet<>()).add(v);
         }
@@ -67,17 +63,20 @@ public class VariantGraphRanking implements Iterable<Set<VariantGraph.Vertex>>,
 
     public static VariantGraphRanking ofOnlyCertainVertices(VariantGraph graph, Set<VariantGraph.Vertex> vertices) {
         final VariantGraphRanking ranking = new VariantGraphRanking(graph);
-        for (VariantGraph.Vertex v : graph.vertices()) {
+        final int[] ranks = new int[graph.vertexCount()];
+        VariantGraphTraversal.of(graph).forEachId(id -> {
+            final VariantGraph.Vertex v = graph.vertex(id);
             int rank = -1;
-            for (VariantGraph.Vertex incoming : v.incoming().keySet()) {
-                rank = Math.max(rank, ranking.byVertex.get(incoming));
+            for (VariantGraph.Vertex incoming : v.incomingEdges().keySet()) {
+                rank = Math.max(rank, ranks[incoming.id()]);
             }
             if (vertices.contains(v)) {
                 rank++;
             }
+            ranks[id] = rank;
             ranking.byVertex.put(v, rank);
             ranking.byRank.computeIfAbsent(rank, r -> new HashSet<>()).add(v);
-        }
+        });
         return ranking;
     }
 
@@ -21,25 +21,33 @@ package eu.interedition.collatex.util;
 
 import eu.interedition.collatex.VariantGraph;
 import eu.interedition.collatex.Witness;
+import eu.interedition.collatex.WitnessSet;
 
-import java.util.ArrayDeque;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Optional;
-import java.util.Queue;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 import java.util.Set;
+import java.util.function.IntConsumer;
 
 /**
+ * Traverses a variant graph in topological order, optionally following only the edges of some witnesses.
+ * <p>
+ * A vertex is visited once all its incoming edges have been followed. The state of a traversal is kept in primitive
+ * arrays indexed by vertex id: the number of incoming edges not followed yet, counted once per vertex when it is first
+ * reached, and a queue of vertex ids. Besides iterating over vertices, a traversal can iterate over their
+ * {@link VariantGraph.Vertex#id() ids} via {@link #ids()} or {@link #forEachId(IntConsumer)}.
+ *
  * @author <a href="http://gregor.middell.net/">Gregor Middell</a>
  */
 public class VariantGraphTraversal implements Iterable<VariantGraph.Vertex> {
     private final VariantGraph graph;
-    private final Set<Witness> witnesses;
+    private final WitnessSet witnesses;
 
     private VariantGraphTraversal(VariantGraph graph, Set<Witness> witnesses) {
         this.graph = graph;
-        this.witnesses = witnesses;
+        this.witnesses = (witnesses == null ? null : graph.witnessRegistry().registered(witnesses));
     }
 
     public static VariantGraphTraversal of(VariantGraph graph, Set<Witness> witnesses) {
@@ -52,40 +60,92 @@ public class VariantGraphTraversal implements Iterable<VariantGraph.Vertex> {
 
     @Override
     public Iterator<VariantGraph.Vertex> iterator() {
+        final Walk walk = new Walk();
         return new Iterator<VariantGraph.Vertex>() {
-
-            private final Map<VariantGraph.Vertex, Long> encountered = new HashMap<>();
-            private final Queue<VariantGraph.Vertex> queue = new ArrayDeque<>();
-            private Optional<VariantGraph.Vertex> next = Optional.of(graph.getStart());
-
             @Override
             public boolean hasNext() {
-                return next.isPresent();
+                return walk.hasNext();
             }
 
             @Override
             public VariantGraph.Vertex next() {
-                final VariantGraph.Vertex next = this.next.get();
-                for (Map.Entry<VariantGraph.Vertex, Set<Witness>> edge : next.outgoing().entrySet()) {
-                    if (witnesses != null && !edge.getValue().stream().anyMatch(witnesses::contains)) {
-                        continue;
-                    }
-                    final VariantGraph.Vertex end = edge.getKey();
+                return graph.vertex(walk.nextInt());
+            }
+        };
+    }
+
+    public PrimitiveIterator.OfInt ids() {
+        return new Walk();
+    }
+
+    public void forEachId(IntConsumer action) {
+        new Walk().forEachRemaining(action);
+    }
+
+    private class Walk implements PrimitiveIterator.OfInt {
+
+        // per vertex id: 0 if not reached yet, otherwise 1 + the number of incoming edges still to be followed
+        private int[] remaining = new int[graph.vertexCount()];
 
-                    final long endEncountered = Optional.ofNullable(encountered.get(end)).orElse(0L);
-                    final long endIncoming = end.incoming().entrySet().stream().filter(e -> witnesses == null || e.getValue().stream().anyMatch(witnesses::contains)).count();
+        private int[] queue = new int[Math.max(1, graph.vertexCount())];
+        private int head = 0;
+        private int tail = 0;
 
-                    if (endIncoming == endEncountered) {
-                        throw new IllegalStateException(String.format("Encountered cycle traversing %s to %s", edge, end));
-                    } else if ((endIncoming - endEncountered) == 1) {
-                        queue.add(end);
+        private Walk() {
+            queue[tail++] = graph.getStart().id();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return head < tail;
+        }
+
+        @Override
+        public int nextInt() {
+            if (head == tail) {
+                throw new NoSuchElementException();
+            }
+            final int next = queue[head++];
+            for (Map.Entry<VariantGraph.Vertex, WitnessSet> edge : graph.vertex(next).outgoingEdges().entrySet()) {
+                if (witnesses != null && !edge.getValue().intersects(witnesses)) {
+                    continue;
+                }
+                final VariantGraph.Vertex end = edge.getKey();
+                final int id = end.id();
+                if (id >= remaining.length) {
+                    remaining = Arrays.copyOf(remaining, graph.vertexCount());
+                }
+
+                int endRemaining = remaining[id];
+                if (endRemaining == 0) {
+                    endRemaining = incoming(end) + 1;
+                } else if (endRemaining == 1) {
+                    throw new IllegalStateException(String.format("Encountered cycle traversing %s to %s", edge, end));
+                }
+                remaining[id] = --endRemaining;
+
+                if (endRemaining == 1) {
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOf(queue, Math.max(tail * 2, graph.vertexCount()));
                     }
+                    queue[tail++] = id;
+                }
+            }
+            return next;
+        }
 
-                    encountered.put(end, endEncountered + 1);
+        private int incoming(VariantGraph.Vertex vertex) {
+            final Map<VariantGraph.Vertex, WitnessSet> incoming = vertex.incomingEdges();
+            if (witnesses == null) {
+                return incoming.size();
+            }
+            int count = 0;
+            for (WitnessSet edge : incoming.values()) {
+                if (edge.intersects(witnesses)) {
+                    count++;
                 }
-                this.next = Optional.ofNullable(queue.poll());
-                return next;
             }
-        };
+            return count;
+        }
     }
 }
@@ -19,14 +19,25 @@
 
 package eu.interedition.collatex;
 
+import eu.interedition.collatex.dekker.DekkerAlgorithm;
+import eu.interedition.collatex.simple.SimpleToken;
 import eu.interedition.collatex.simple.SimpleVariantGraphSerializer;
 import eu.interedition.collatex.simple.SimpleWitness;
+import eu.interedition.collatex.util.CompactVariantGraphStorage;
 import eu.interedition.collatex.util.VariantGraphTraversal;
 import org.junit.Test;
 
 import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -73,6 +84,16 @@ public class VariantGraphTest extends AbstractTest {
         assertHasWitnesses(edgeBetween(thirdVertex, graph.getEnd()), w[0]);
     }
 
+    @Test
+    public void traversalOfUnknownWitness() {
+        final SimpleWitness[] w = createWitnesses("a b", "c");
+        final VariantGraph graph = collate(w[0]);
+        final List<VariantGraph.Vertex> path = StreamSupport.stream(VariantGraphTraversal.of(graph, Collections.singleton(w[1])).spliterator(), false).collect(Collectors.toList());
+
+        assertEquals(Collections.singletonList(graph.getStart()), path);
+        assertEquals(-1, graph.witnessRegistry().ordinal(w[1]));
+    }
+
     @Test
     public void getPathForWitness() {
         final SimpleWitness[] w = createWitnesses("a b c d e f ", "x y z d e", "a b x y z");
@@ -197,4 +218,113 @@ public class VariantGraphTest extends AbstractTest {
         assertHasWitnesses(edgeBetween(zin2BVertex, nuendanVertex), w[1]);
         //    assertHasWitnesses(edgeBetween(nuendanVertex, voorVertex2), w[1]);
     }
+
+    @Test
+    public void traversalIds() {
+        final SimpleWitness[] w = createWitnesses("a b c d e f ", "x y z d e", "a b x y z");
+        final VariantGraph graph = collate(w);
+
+        for (VariantGraphTraversal traversal : new VariantGraphTraversal[] { VariantGraphTraversal.of(graph), VariantGraphTraversal.of(graph, Collections.singleton(w[1])) }) {
+            final List<Integer> ids = new ArrayList<>();
+            traversal.forEachId(ids::add);
+
+            assertEquals(StreamSupport.stream(traversal.spliterator(), false).map(VariantGraph.Vertex::id).collect(Collectors.toList()), ids);
+            final List<Integer> iterated = new ArrayList<>();
+            traversal.ids().forEachRemaining((IntConsumer) iterated::add);
+            assertEquals(ids, iterated);
+        }
+        assertEquals(7, StreamSupport.stream(VariantGraphTraversal.of(graph, Collections.singleton(w[1])).spliterator(), false).count());
+    }
+
+    @Test
+    public void joinEqualsPairwiseJoin() {
+        final String[][] texts = {
+            { "the black cat", "the black cat" },
+            { "the nice black cat shared his food", "the bad white cat spilled his food again" },
+            { "voor Zo nu en dan zin2 na voor", "voor zin2 Nu en dan voor" },
+            { "The black dog chases a red cat.", "A red cat chases the black dog.", "A red cat chases the yellow dog" },
+            { "a b c d e f g h", "e f g h a b c d", "a b c d x e f g h", "h g f e d c b a" }
+        };
+        for (boolean mergeTranspositions : new boolean[] { false, true }) {
+            final DekkerAlgorithm dekker = new DekkerAlgorithm();
+            dekker.setMergeTranspositions(mergeTranspositions);
+            setCollationAlgorithm(dekker);
+            for (String[] witnesses : texts) {
+                final SimpleWitness[] w = createWitnesses(witnesses);
+                assertEquals(describe(pairwiseJoin(collate(w))), describe(VariantGraph.JOIN.apply(collate(w))));
+
+                final VariantGraph expected = new VariantGraph(new CompactVariantGraphStorage());
+                final VariantGraph actual = new VariantGraph(new CompactVariantGraphStorage());
+                collate(expected, w);
+                collate(actual, w);
+                assertEquals(describe(pairwiseJoin(expected)), describe(VariantGraph.JOIN.apply(actual)));
+            }
+        }
+    }
+
+    /**
+     * The previous implementation of {@link VariantGraph#JOIN}, joining one pair of vertices at a time.
+     */
+    private static VariantGraph pairwiseJoin(VariantGraph graph) {
+        final Set<VariantGraph.Vertex> processed = new HashSet<>();
+        final Deque<VariantGraph.Vertex> queue = new ArrayDeque<>(graph.start.outgoing().keySet());
+
+        while (!queue.isEmpty()) {
+            final VariantGraph.Vertex vertex = queue.pop();
+            final Set<Set<VariantGraph.Vertex>> transpositions = new HashSet<>(vertex.transpositions());
+            if (vertex.outgoing().size() == 1) {
+                final VariantGraph.Vertex joinCandidateVertex = vertex.outgoing().keySet().iterator().next();
+                final Set<Set<VariantGraph.Vertex>> joinCandidateTranspositions = new HashSet<>(joinCandidateVertex.transpositions());
+
+                boolean canJoin = !graph.end.equals(joinCandidateVertex) && //
+                    joinCandidateVertex.incoming().size() == 1 && //
+                    transpositions.equals(joinCandidateTranspositions);
+                if (canJoin) {
+                    vertex.add(joinCandidateVertex.tokens());
+                    for (Set<VariantGraph.Vertex> t : new HashSet<>(joinCandidateVertex.transpositions())) {
+                        final Set<VariantGraph.Vertex> transposed = new HashSet<>(t);
+                        transposed.remove(joinCandidateVertex);
+                        transposed.add(vertex);
+                        for (VariantGraph.Vertex tv : t) {
+                            graph.transpositionIndex.getOrDefault(tv, Collections.emptySet()).remove(t);
+                        }
+                        graph.transpose(transposed);
+                    }
+
+                    graph.storage.disconnect(vertex, joinCandidateVertex);
+                    for (Map.Entry<VariantGraph.Vertex, WitnessSet> edge : new ArrayList<>(joinCandidateVertex.outgoingEdges().entrySet())) {
+                        graph.storage.disconnect(joinCandidateVertex, edge.getKey());
+                        graph.storage.connect(vertex, edge.getKey(), edge.getValue());
+                    }
+
+                    queue.push(vertex);
+                    continue;
+                }
+            }
+
+            processed.add(vertex);
+            vertex.outgoing().keySet().stream().filter(v -> !processed.contains(v)).forEach(queue::push);
+        }
+        return graph;
+    }
+
+    private static String describe(VariantGraph graph) {
+        final StringBuilder description = new StringBuilder();
+        for (VariantGraph.Vertex vertex : graph.vertices()) {
+            description.append(vertex.id()).append(' ')
+                .append(vertex.tokens().stream().map(t -> (SimpleToken) t).map(t -> t.getWitness().getSigil() + ":" + t.getNormalized()).sorted().collect(Collectors.toList()))
+                .append(" -> ")
+                .append(vertex.outgoing().entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey(Comparator.comparingInt(VariantGraph.Vertex::id)))
+                    .map(e -> e.getKey().id() + e.getValue().stream().map(Witness::getSigil).sorted().collect(Collectors.toList()).toString())
+                    .collect(Collectors.toList()))
+                .append(" T")
+                .append(vertex.transpositions().stream()
+                    .map(t -> t.stream().map(VariantGraph.Vertex::id).sorted().collect(Collectors.toList()).toString())
+                    .sorted()
+                    .collect(Collectors.toList()))
+                .append('\n');
+        }
+        return description.toString();
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex;
+
+import eu.interedition.collatex.simple.SimpleWitness;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WitnessSetTest extends AbstractTest {
+
+    @Test
+    public void setSemantics() {
+        final SimpleWitness[] w = createWitnesses("a", "b", "c");
+        final WitnessRegistry registry = new WitnessRegistry();
+        final WitnessSet ab = registry.of(Arrays.asList(w[0], w[1]));
+
+        assertEquals(2, ab.size());
+        assertTrue(ab.contains(w[0]));
+        assertFalse(ab.contains(w[2]));
+        assertFalse(ab.contains("a"));
+        assertEquals(new HashSet<>(Arrays.asList(w[0], w[1])), ab);
+        assertEquals(ab, new HashSet<>(Arrays.asList(w[1], w[0])));
+        assertEquals(new HashSet<>(Arrays.asList(w[0], w[1])).hashCode(), ab.hashCode());
+        assertEquals(Arrays.asList(w[0], w[1]), new ArrayList<>(ab));
+    }
+
+    @Test
+    public void operations() {
+        final SimpleWitness[] w = createWitnesses("a", "b", "c");
+        final WitnessRegistry registry = new WitnessRegistry();
+        final WitnessSet a = registry.singleton(w[0]);
+        final WitnessSet ab = registry.of(Arrays.asList(w[0], w[1]));
+        final WitnessSet c = registry.singleton(w[2]);
+
+        assertEquals(ab, a.union(registry.singleton(w[1])));
+        assertSame(ab, ab.union(a));
+        assertEquals(a, ab.intersection(a));
+        assertTrue(ab.intersection(c).isEmpty());
+        assertSame(registry.empty(), ab.intersection(c));
+        assertTrue(ab.intersects(a));
+        assertFalse(ab.intersects(c));
+        assertNotEquals(ab, ab.union(c));
+        assertSame(ab, registry.of(ab));
+    }
+
+    @Test
+    public void registered() {
+        final SimpleWitness[] w = createWitnesses("a", "b", "c");
+        final WitnessRegistry registry = new WitnessRegistry();
+        final WitnessSet ab = registry.of(Arrays.asList(w[0], w[1]));
+
+        assertEquals(registry.singleton(w[1]), registry.registered(Arrays.asList(w[1], w[2])));
+        assertEquals(2, registry.size());
+        assertEquals(-1, registry.ordinal(w[2]));
+        assertSame(registry.empty(), registry.registered(Collections.singleton(w[2])));
+        assertSame(ab, registry.registered(ab));
+    }
+
+    @Test
+    public void manyWitnesses() {
+        final WitnessRegistry registry = new WitnessRegistry();
+        final List<Witness> witnesses = new ArrayList<>();
+        for (int wc = 0; wc < 200; wc++) {
+            witnesses.add(new SimpleWitness("W" + wc));
+        }
+        final WitnessSet all = registry.of(witnesses);
+        final WitnessSet last = registry.singleton(witnesses.get(199));
+
+        assertEquals(200, all.size());
+        assertEquals(witnesses, new ArrayList<>(all));
+        assertEquals(last, all.intersection(last));
+        assertEquals(199, registry.ordinal(witnesses.get(199)));
+        assertEquals(4, last.wordCount());
+        assertEquals(1, registry.singleton(witnesses.get(0)).wordCount());
+        assertEquals(registry.empty(), registry.singleton(witnesses.get(0)).intersection(last));
+    }
+}
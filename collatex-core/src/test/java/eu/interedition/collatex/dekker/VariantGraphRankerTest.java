@@ -20,11 +20,18 @@
 package eu.interedition.collatex.dekker;
 
 import eu.interedition.collatex.AbstractTest;
+import eu.interedition.collatex.CollationAlgorithmFactory;
 import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.matching.EqualityTokenComparator;
+import eu.interedition.collatex.simple.SimpleToken;
+import eu.interedition.collatex.simple.SimpleWitness;
+import eu.interedition.collatex.util.CompactVariantGraphStorage;
 import eu.interedition.collatex.util.VariantGraphRanking;
 import org.junit.Test;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
@@ -73,4 +80,36 @@ public class VariantGraphRankerTest extends AbstractTest {
         assertVertexEquals("so", vertices.get(6));
         assertEquals(6, (long) ranking.apply(vertices.get(6)));
     }
+
+    @Test
+    public void incrementalRanks() {
+        final SimpleWitness[] w = createWitnesses(
+            "the nice black and white cat shared his food",
+            "the friendly white and black cat spilled his food again",
+            "a cat the black cat shared his food",
+            "his food the cat shared",
+            "so the cat was agast");
+
+        assertRanks(collate(w));
+        assertRanks(VariantGraph.JOIN.apply(collate(w)));
+
+        final VariantGraph compact = new VariantGraph(new CompactVariantGraphStorage());
+        collate(compact, w);
+        assertRanks(compact);
+
+        setCollationAlgorithm(CollationAlgorithmFactory.medite(new EqualityTokenComparator(), SimpleToken.TOKEN_MATCH_EVALUATOR));
+        assertRanks(collate(w));
+
+        setCollationAlgorithm(CollationAlgorithmFactory.needlemanWunsch(new EqualityTokenComparator()));
+        assertRanks(collate(w));
+    }
+
+    private static void assertRanks(VariantGraph graph) {
+        final Map<VariantGraph.Vertex, Integer> ranks = new HashMap<>();
+        for (VariantGraph.Vertex v : graph.vertices()) {
+            final int rank = v.incoming().keySet().stream().mapToInt(ranks::get).max().orElse(-1) + 1;
+            ranks.put(v, rank);
+            assertEquals(rank, v.rank());
+        }
+    }
 }
@@ -0,0 +1,168 @@
+package eu.interedition.collatex.dekker.astar;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AstarAlgorithmTest {
+
+  // a grid with walls (#), searched from the top left to the bottom right corner
+  private static final String[] GRID = {
+      "....#",
+      ".##.#",
+      "...#.",
+      "#.#..",
+      "....."
+  };
+
+  @Test
+  public void shortestPathInGrid() {
+    final GridSearch byNode = new GridSearch();
+    final List<Integer> path = byNode.run();
+    assertEquals(Integer.valueOf(0), path.get(0));
+    assertEquals(Integer.valueOf(24), path.get(path.size() - 1));
+    assertEquals(9, path.size());
+    assertTrue(byNode.getExpandedNodes() > 0);
+    assertTrue(byNode.getGeneratedNodes() >= byNode.getExpandedNodes());
+    assertEquals(0, byNode.getReopenedNodes());
+
+    final GridSearch byId = GridSearch.numbered();
+    assertEquals(path, byId.run());
+    assertEquals(byNode.getExpandedNodes(), byId.getExpandedNodes());
+    assertEquals(path, byNode.reconstructPath(byNode.cameFrom, 24));
+    assertEquals(path, byId.reconstructPath(byId.cameFrom, 24));
+
+    final GridSearch deepestFirst = GridSearch.numbered();
+    deepestFirst.setTieBreaking(TieBreaking.deepestFirst());
+    assertEquals(9, deepestFirst.run().size());
+    assertTrue(deepestFirst.getExpandedNodes() <= byId.getExpandedNodes());
+  }
+
+  @Test
+  public void reopensNodesWithInconsistentHeuristic() {
+    final GraphSearch search = new GraphSearch();
+    assertEquals(Arrays.asList("S", "A", "C", "G"), search.aStar("S", new IntCost(0)));
+    assertEquals(1, search.getReopenedNodes());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void failsWhenBudgetIsExhausted() {
+    final GridSearch search = new GridSearch();
+    search.setNodeBudget(2);
+    search.run();
+  }
+
+  static class IntCost extends Cost<IntCost> {
+    final int value;
+
+    IntCost(int value) {
+      this.value = value;
+    }
+
+    @Override
+    protected IntCost plus(IntCost other) {
+      return new IntCost(value + other.value);
+    }
+
+    @Override
+    public int compareTo(IntCost o) {
+      return Integer.compare(value, o.value);
+    }
+  }
+
+  static class GridSearch extends AstarAlgorithm<Integer, IntCost> {
+    private static final int SIZE = GRID.length;
+
+    GridSearch() {
+      super();
+    }
+
+    GridSearch(int nodeCount) {
+      super(nodeCount, node -> node);
+    }
+
+    static GridSearch numbered() {
+      return new GridSearch(SIZE * SIZE);
+    }
+
+    List<Integer> run() {
+      return aStar(0, new IntCost(0));
+    }
+
+    @Override
+    protected boolean isGoal(Integer node) {
+      return node == SIZE * SIZE - 1;
+    }
+
+    @Override
+    protected Iterable<Integer> neighborNodes(Integer current) {
+      final int row = current / SIZE;
+      final int column = current % SIZE;
+      final List<Integer> neighbors = new ArrayList<>(4);
+      final int[][] steps = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+      for (int[] step : steps) {
+        final int r = row + step[0];
+        final int c = column + step[1];
+        if (r >= 0 && r < SIZE && c >= 0 && c < SIZE && GRID[r].charAt(c) != '#') {
+          neighbors.add(r * SIZE + c);
+        }
+      }
+      return neighbors;
+    }
+
+    @Override
+    protected IntCost heuristicCostEstimate(Integer node) {
+      return new IntCost((SIZE - 1 - node / SIZE) + (SIZE - 1 - node % SIZE));
+    }
+
+    @Override
+    protected IntCost distBetween(Integer current, Integer neighbor) {
+      return new IntCost(1);
+    }
+  }
+
+  // the estimate for A is admissible, but not consistent, so C is first reached on a more expensive path through B
+  static class GraphSearch extends AstarAlgorithm<String, IntCost> {
+    private static final Map<String, Map<String, Integer>> EDGES = new HashMap<>();
+
+    static {
+      EDGES.put("S", new HashMap<>());
+      EDGES.get("S").put("A", 1);
+      EDGES.get("S").put("B", 1);
+      EDGES.put("A", new HashMap<>());
+      EDGES.get("A").put("C", 1);
+      EDGES.put("B", new HashMap<>());
+      EDGES.get("B").put("C", 2);
+      EDGES.put("C", new HashMap<>());
+      EDGES.get("C").put("G", 5);
+      EDGES.put("G", new HashMap<>());
+    }
+
+    @Override
+    protected boolean isGoal(String node) {
+      return node.equals("G");
+    }
+
+    @Override
+    protected Iterable<String> neighborNodes(String current) {
+      return EDGES.get(current).keySet();
+    }
+
+    @Override
+    protected IntCost heuristicCostEstimate(String node) {
+      return new IntCost(node.equals("A") ? 4 : 0);
+    }
+
+    @Override
+    protected IntCost distBetween(String current, String neighbor) {
+      return new IntCost(EDGES.get(current).get(neighbor));
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.dekker.island;
+
+import eu.interedition.collatex.AbstractTest;
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.dekker.Match;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class AstarIslandSelectionTest extends AbstractTest {
+
+    private List<VariantGraph.Vertex> vertices;
+    private Set<Island> islands;
+
+    @Before
+    public void createIslands() {
+        vertices = new ArrayList<>();
+        collate(createWitnesses("a b c d e f g h i")[0]).vertices().forEach(vertices::add);
+
+        // the largest island shares vertices with two smaller ones, which do not conflict with each other
+        islands = new HashSet<>();
+        islands.add(island(0, 0, 3));
+        islands.add(island(3, 0, 2));
+        islands.add(island(5, 2, 2));
+    }
+
+    @Test
+    public void alignsMoreTokensThanGreedySelection() {
+        assertEquals(3, alignedTokens(IslandSelectionStrategy.greedy().select(islands)));
+        assertEquals(4, alignedTokens(new AstarIslandSelection(0, 0).select(islands)));
+        assertEquals(4, alignedTokens(new AstarIslandSelection().select(islands)));
+    }
+
+    @Test
+    public void completesGreedilyWhenBudgetIsExhausted() {
+        assertEquals(3, alignedTokens(IslandSelectionStrategy.astar(0, 1).select(islands)));
+        assertEquals(4, alignedTokens(IslandSelectionStrategy.astar(1, 0).select(islands)));
+    }
+
+    private static int alignedTokens(List<Island> selection) {
+        final CommittedCells cells = new CommittedCells();
+        int tokens = 0;
+        for (Island island : selection) {
+            assertFalse(cells.overlaps(island));
+            cells.commit(island);
+            tokens += island.size();
+        }
+        return tokens;
+    }
+
+    // an island of the given size in consecutive rows, matching consecutive vertices starting with the given one
+    private Island island(int row, int vertex, int size) {
+        final Island island = new Island();
+        for (int i = 0; i < size; i++) {
+            island.add(new Coordinate(row + i, vertex + i, new Match(vertices.get(vertex + i), null)));
+        }
+        return island;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package eu.interedition.collatex.dekker.island;
+
+import eu.interedition.collatex.AbstractTest;
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.dekker.Match;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommittedCellsTest extends AbstractTest {
+
+    @Test
+    public void overlaps() {
+        final List<VariantGraph.Vertex> vertices = new ArrayList<>();
+        collate(createWitnesses("a b c d e f")[0]).vertices().forEach(vertices::add);
+
+        final CommittedCells cells = new CommittedCells();
+        cells.commit(island(vertices, 2, 3, 3, 4));
+
+        // committed row
+        assertEquals(1, cells.firstOverlap(island(vertices, 1, 0, 0, 2)));
+        // committed vertex in another row
+        assertEquals(1, cells.firstOverlap(island(vertices, 6, 2, 2, 2)));
+        assertTrue(cells.overlaps(island(vertices, 0, 5, 5, 2)));
+        // committed columns, but other vertices
+        assertEquals(2, cells.firstOverlap(island(vertices, 6, 3, 0, 2)));
+        assertFalse(cells.overlaps(island(vertices, 6, 3, 0, 2)));
+
+        final CommittedCells copy = new CommittedCells(cells);
+        copy.commit(island(vertices, 8, 7, 7, 1));
+        assertTrue(copy.isCommitted(8, null));
+        assertFalse(cells.isCommitted(8, null));
+    }
+
+    @Test
+    public void cellsWithoutVertices() {
+        final List<VariantGraph.Vertex> vertices = new ArrayList<>();
+        collate(createWitnesses("a b c")[0]).vertices().forEach(vertices::add);
+
+        final CommittedCells cells = new CommittedCells();
+        cells.commit(new Island(new Coordinate(0, 0), new Coordinate(1, 1)));
+        assertTrue(cells.isCommitted(1, null));
+        assertFalse(cells.overlaps(island(vertices, 2, 0, 1, 2)));
+
+        // a committed column, but no vertex to compare with
+        cells.commit(island(vertices, 2, 2, 1, 1));
+        assertFalse(cells.overlaps(new Island(new Coordinate(3, 1), new Coordinate(4, 2))));
+    }
+
+    // an island of the given size matching consecutive vertices, starting with the given one, in consecutive columns
+    private static Island island(List<VariantGraph.Vertex> vertices, int row, int column, int vertex, int size) {
+        final Island island = new Island();
+        for (int i = 0; i < size; i++) {
+            island.add(new Coordinate(row + i, column + i, new Match(vertices.get(vertex + i), null)));
+        }
+        return island;
+    }
+}
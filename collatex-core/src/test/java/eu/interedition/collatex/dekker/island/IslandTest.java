@@ -27,6 +27,10 @@ import eu.interedition.collatex.matching.EqualityTokenComparator;
 import eu.interedition.collatex.simple.SimpleWitness;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -78,6 +82,16 @@ public class IslandTest extends AbstractTest {
         isl_2.add(new Coordinate(3, 3));
         arch.add(isl_2);
         assertEquals(2, arch.size());
+        assertTrue(arch.containsCoordinate(3, 3));
+        assertFalse(arch.containsCoordinate(3, 2));
+        assertEquals(Collections.singleton(0), arch.getIslandVectors());
+
+        Archipelago copy = new Archipelago(arch);
+        Island isl_3 = new Island();
+        isl_3.add(new Coordinate(4, 6));
+        copy.add(isl_3);
+        assertTrue(copy.containsCoordinate(4, 6));
+        assertFalse(arch.containsCoordinate(4, 6));
     }
 
     @Test
@@ -92,4 +106,66 @@ public class IslandTest extends AbstractTest {
         assertEquals(3, archipelago.size());
     }
 
+    @Test
+    public void testEnds() {
+        Island isl = island(new int[]{2, 5, 6, 9}, 3);
+        assertEquals(new Coordinate(3, 2), isl.getLeftEnd());
+        assertEquals(new Coordinate(6, 9), isl.getRightEnd());
+        assertTrue(isl.contains(new Coordinate(4, 5)));
+        assertFalse(isl.contains(new Coordinate(4, 6)));
+
+        isl.removeCoordinate(new Coordinate(3, 2));
+        isl.removeCoordinate(new Coordinate(6, 9));
+        assertEquals(2, isl.size());
+        assertEquals(new Coordinate(4, 5), isl.getLeftEnd());
+        assertEquals(new Coordinate(5, 6), isl.getRightEnd());
+
+        Island head = isl.head(1);
+        assertEquals(1, head.size());
+        assertEquals(new Coordinate(4, 5), head.getRightEnd());
+        isl.add(new Coordinate(6, 10));
+        assertEquals(1, head.size());
+        assertEquals(3, isl.size());
+    }
+
+    @Test
+    public void testEqualsAndHashCodeOfCoordinates() {
+        Island isl = island(new int[]{2, 5, 6, 9}, 3);
+        List<Coordinate> coordinates = new ArrayList<>();
+        isl.forEach(coordinates::add);
+        assertEquals(coordinates.hashCode(), isl.hashCode());
+        assertEquals(isl, island(new int[]{2, 5, 6, 9}, 3));
+        assertFalse(isl.equals(island(new int[]{2, 5, 7, 9}, 3)));
+    }
+
+    @Test
+    public void testCompetitors() {
+        // shared rows
+        assertTrue(island(new int[]{0, 1}, 0).isCompetitor(island(new int[]{5, 6}, 1)));
+        // shared column of islands without gaps
+        assertTrue(island(new int[]{0, 1}, 0).isCompetitor(island(new int[]{1, 2}, 2)));
+        assertFalse(island(new int[]{0, 1}, 0).isCompetitor(island(new int[]{2, 3}, 2)));
+        // overlapping column ranges, but no shared column
+        assertFalse(island(new int[]{5, 6}, 0).isCompetitor(island(new int[]{3, 8}, 2)));
+        assertFalse(island(new int[]{1, 3, 5}, 0).isCompetitor(island(new int[]{2, 4, 6}, 3)));
+        assertTrue(island(new int[]{1, 3, 5}, 0).isCompetitor(island(new int[]{2, 5}, 3)));
+        assertTrue(island(new int[]{3, 8}, 2).isCompetitor(island(new int[]{7, 8}, 0)));
+    }
+
+    private static Island island(int[] columns, int row) {
+        Island isl = new Island();
+        for (int i = 0; i < columns.length; i++) {
+            isl.add(new Coordinate(row + i, columns[i]));
+        }
+        return isl;
+    }
+
+    @Test
+    public void testDistanceToIdealLine() {
+        assertEquals(0, island(new int[]{3, 4}, 3).getDistanceToIdealLine(), 0);
+        Island isl = island(new int[]{3, 4}, 1);
+        assertEquals(1, isl.getDistanceToIdealLine(), 1e-9);
+        isl.removeCoordinate(isl.getLeftEnd());
+        assertEquals(Math.log(5 / 3.0) / Math.log(2), isl.getDistanceToIdealLine(), 1e-9);
+    }
 }
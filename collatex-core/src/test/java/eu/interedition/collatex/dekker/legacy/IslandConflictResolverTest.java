@@ -21,15 +21,21 @@ package eu.interedition.collatex.dekker.legacy;
 
 import eu.interedition.collatex.AbstractTest;
 import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.dekker.island.Coordinate;
 import eu.interedition.collatex.dekker.island.Island;
+import eu.interedition.collatex.dekker.island.IslandCollection;
 import eu.interedition.collatex.dekker.island.IslandCompetition;
 import eu.interedition.collatex.dekker.island.IslandConflictResolver;
 import eu.interedition.collatex.simple.SimpleWitness;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 
@@ -56,4 +62,40 @@ public class IslandConflictResolverTest extends AbstractTest {
         Map<IslandCompetition, List<Island>> competition = resolver.analyzeConflictsBetweenPossibleIslands(possibleIslands);
         assertEquals(3, competition.get(IslandCompetition.CompetingIsland).size());
     }
+
+    @Test
+    public void testCompetingIslandsMatchPairwiseComparison() {
+        final Random random = new Random(13);
+        for (int batch = 0; batch < 50; batch++) {
+            // islands of the same size, some of them with gaps between their columns
+            final int size = 1 + random.nextInt(4);
+            final Set<Island> islands = new HashSet<>();
+            for (int i = 0, count = 2 + random.nextInt(40); i < count; i++) {
+                final Island island = new Island();
+                final int row = random.nextInt(60);
+                int column = random.nextInt(60);
+                for (int c = 0; c < size; c++) {
+                    island.add(new Coordinate(row + c, column));
+                    column += (random.nextInt(4) == 0 ? 2 + random.nextInt(3) : 1);
+                }
+                islands.add(island);
+            }
+            final List<Island> possibleIslands = new ArrayList<>(islands);
+
+            final Set<Island> expected = new HashSet<>();
+            for (Island i1 : possibleIslands) {
+                for (Island i2 : possibleIslands) {
+                    if (i1 != i2 && i1.isCompetitor(i2)) {
+                        expected.add(i1);
+                    }
+                }
+            }
+
+            final IslandConflictResolver resolver = new IslandConflictResolver(new IslandCollection(Collections.emptySet()));
+            final Map<IslandCompetition, List<Island>> competition = resolver.analyzeConflictsBetweenPossibleIslands(possibleIslands);
+            final Set<Island> competing = new HashSet<>(competition.getOrDefault(IslandCompetition.CompetingIsland, Collections.emptyList()));
+            assertEquals(expected, competing);
+            assertEquals(possibleIslands.size() - expected.size(), competition.getOrDefault(IslandCompetition.NonCompetingIsland, Collections.emptyList()).size());
+        }
+    }
 }
@@ -29,6 +29,7 @@ import eu.interedition.collatex.simple.SimpleWitness;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -205,4 +206,36 @@ public class MatchTableTest extends AbstractTest {
         assertVectorEquals(2, 2, 2, islands.get(2));
         assertVectorEquals(0, 3, 2, islands.get(3));
     }
+
+    @Test
+    public void sparseTableEqualsDenseTable() {
+        assertSparseTableEqualsDenseTable("A B A B C", "A B C A B");
+        assertSparseTableEqualsDenseTable("the cat and the dog", "the dog and the cat");
+        assertSparseTableEqualsDenseTable("x a b c a b", "x c a b", "a b x c a b x");
+        assertSparseTableEqualsDenseTable("a b", "c d");
+    }
+
+    private void assertSparseTableEqualsDenseTable(String... witnessContents) {
+        final SimpleWitness[] witnesses = createWitnesses(witnessContents);
+        final VariantGraph graph = collate(Arrays.copyOf(witnesses, witnesses.length - 1));
+        final SimpleWitness witness = witnesses[witnesses.length - 1];
+        final MatchTable dense = MatchTableImpl.create(graph, witness);
+        final MatchTable sparse = SparseMatchTable.create(graph, witness);
+
+        assertEquals(dense.rowList(), sparse.rowList());
+        assertEquals(dense.columnList(), sparse.columnList());
+        for (int row = -1; row <= dense.rowList().size(); row++) {
+            for (int column = -1; column <= dense.columnList().size(); column++) {
+                final boolean inTable = (row >= 0 && row < dense.rowList().size() && column >= 0 && column < dense.columnList().size());
+                assertEquals(inTable ? dense.vertexAt(row, column) : null, sparse.vertexAt(row, column));
+                assertEquals(inTable ? dense.tokenAt(row, column) : null, sparse.tokenAt(row, column));
+            }
+        }
+        assertEquals(dense.getIslands(), sparse.getIslands());
+        for (Island island : sparse.getIslands()) {
+            for (Coordinate coordinate : island) {
+                assertEquals(dense.vertexAt(coordinate.getRow(), coordinate.getColumn()), coordinate.match.vertex);
+            }
+        }
+    }
 }
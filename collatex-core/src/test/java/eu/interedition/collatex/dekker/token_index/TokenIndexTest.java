@@ -3,11 +3,17 @@ package eu.interedition.collatex.dekker.token_index;
 import eu.interedition.collatex.AbstractTest;
 import eu.interedition.collatex.Token;
 import eu.interedition.collatex.Witness;
+import eu.interedition.collatex.matching.EditDistanceTokenComparator;
 import eu.interedition.collatex.matching.EqualityTokenComparator;
+import eu.interedition.collatex.matching.StrictEqualityTokenComparator;
 import eu.interedition.collatex.simple.SimpleWitness;
+import eu.interedition.collatex.suffixarray.SAIS;
+import eu.interedition.collatex.suffixarray.SuffixArrays;
+import eu.interedition.collatex.suffixarray.SuffixData;
 import org.junit.Test;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 
@@ -150,7 +156,143 @@ public class TokenIndexTest extends AbstractTest {
         TokenIndex index = new TokenIndex(new MySpecialComparator(), tokens1, tokens2);
         index.prepare();
         assertEquals("[interesting, nice, huh, $1, very, nice, right, $2]", Arrays.toString(index.token_array));
+        assertEquals("[0, 1, 2, 3, 4, 1, 6, 7]", Arrays.toString(index.token_id_array));
         Arrays.sort(index.token_array, new TokenIndex.MarkerTokenComparatorWrapper(new MySpecialComparator()));
         assertEquals("[$1, $2, huh, interesting, nice, nice, right, very]", Arrays.toString(index.token_array));
     }
+
+    @Test
+    public void testInternedTokenIds() {
+        final SimpleWitness[] w = createWitnesses("the a the", "The a", "a b c the a b");
+        for (Comparator<Token> comparator : Arrays.<Comparator<Token>>asList(new EqualityTokenComparator(), new StrictEqualityTokenComparator(), new EditDistanceTokenComparator())) {
+            TokenIndex tokenIndex = new TokenIndex(comparator, w);
+            tokenIndex.prepare();
+
+            // token ids are assigned as if all tokens were compared to each other
+            SuffixData expected = SuffixArrays.createWithLCP(tokenIndex.token_array, new SAIS(), new TokenIndex.MarkerTokenComparatorWrapper(comparator));
+            assertEquals(Arrays.toString(expected.getSuffixArray()), Arrays.toString(tokenIndex.suffix_array));
+            assertEquals(Arrays.toString(expected.getLCP()), Arrays.toString(tokenIndex.LCP_array));
+        }
+    }
+
+    @Test
+    public void testParallelBuild() {
+        final Random random = new Random(42);
+        final String[] contents = new String[12];
+        for (int wc = 0; wc < contents.length; wc++) {
+            final StringBuilder content = new StringBuilder();
+            for (int tc = 0, length = 200 + random.nextInt(200); tc < length; tc++) {
+                // a small vocabulary and a refrain, so blocks repeat within and across witnesses
+                content.append(tc % 50 < 10 ? "refrain" + (tc % 10) : "w" + random.nextInt(30)).append(' ');
+            }
+            contents[wc] = content.toString();
+        }
+        contents[contents.length - 1] = contents[0];
+        final SimpleWitness[] w = createWitnesses(contents);
+
+        for (Comparator<Token> comparator : Arrays.<Comparator<Token>>asList(new EqualityTokenComparator(), new StrictEqualityTokenComparator(), new EditDistanceTokenComparator())) {
+            final TokenIndex serial = new TokenIndex(comparator, w);
+            serial.prepare();
+            final TokenIndex parallel = new TokenIndex(comparator, w);
+            parallel.setParallelism(4);
+            parallel.prepare();
+
+            assertEquals(Arrays.toString(serial.token_array), Arrays.toString(parallel.token_array));
+            assertEquals(Arrays.toString(serial.token_id_array), Arrays.toString(parallel.token_id_array));
+            assertEquals(Arrays.toString(serial.suffix_array), Arrays.toString(parallel.suffix_array));
+            assertEquals(Arrays.toString(serial.LCP_array), Arrays.toString(parallel.LCP_array));
+            assertEquals(serial.blocks.size(), parallel.blocks.size());
+            for (SimpleWitness witness : w) {
+                assertEquals(serial.getStartTokenPositionForWitness(witness), parallel.getStartTokenPositionForWitness(witness));
+                assertEquals(
+                    serial.getBlockInstancesForWitness(witness).stream().map(i -> i.start_token + "+" + i.length()).collect(Collectors.toList()),
+                    parallel.getBlockInstancesForWitness(witness).stream().map(i -> i.start_token + "+" + i.length()).collect(Collectors.toList())
+                );
+            }
+        }
+    }
+
+    @Test
+    public void testNearMatchingTokenIds() {
+        final SimpleWitness[] w = createWitnesses("near matching yeah", "nar matchin yeah", "near far");
+        final TokenIndex tokenIndex = new TokenIndex(new EditDistanceTokenComparator(), w);
+        tokenIndex.prepare();
+        // Position:  0    1        2    3  4   5       6    7  8    9   10
+        // Tokens:    near matching yeah $1 nar matchin yeah $2 near far $3
+        assertEquals(tokenIndex.token_id_array[0], tokenIndex.token_id_array[4]);
+        assertEquals(tokenIndex.token_id_array[0], tokenIndex.token_id_array[8]);
+        assertEquals(tokenIndex.token_id_array[1], tokenIndex.token_id_array[5]);
+        assertEquals(tokenIndex.token_id_array[2], tokenIndex.token_id_array[6]);
+        // "nar" is as near to "far" as to "near", and joins the cluster of the more frequent one
+        assertEquals(9, tokenIndex.token_id_array[9]);
+    }
+
+    @Test
+    public void testBlockDepths() {
+        final Random random = new Random(7);
+        final String[] contents = new String[8];
+        for (int wc = 0; wc < contents.length; wc++) {
+            final StringBuilder content = new StringBuilder();
+            for (int tc = 0, length = 50 + random.nextInt(50); tc < length; tc++) {
+                content.append("w").append(random.nextInt(8)).append(' ');
+            }
+            contents[wc] = content.toString();
+        }
+        final SimpleWitness[] w = createWitnesses(contents);
+        final TokenIndex tokenIndex = new TokenIndex(new EqualityTokenComparator(), w);
+        tokenIndex.prepare();
+        for (Block block : tokenIndex.blocks) {
+            final Set<Witness> witnesses = new HashSet<>();
+            for (int slot = block.start; slot <= block.end; slot++) {
+                witnesses.add(block.getInstance(slot).getWitness());
+            }
+            assertEquals(block.toString(), witnesses.size(), block.getDepth());
+        }
+    }
+
+    @Test
+    public void testBlockOccurrencesByWitness() {
+        final SimpleWitness[] w = createWitnesses("a b a b c", "b a b", "c a b a");
+        final TokenIndex tokenIndex = new TokenIndex(new EqualityTokenComparator(), w);
+        tokenIndex.prepare();
+        for (Block block : tokenIndex.blocks) {
+            final List<Integer> occurrences = new ArrayList<>();
+            for (int slot = block.start; slot <= block.end; slot++) {
+                occurrences.add(block.getStartToken(slot));
+            }
+            Collections.sort(occurrences);
+            for (int i = 0; i < block.getFrequency(); i++) {
+                assertEquals((int) occurrences.get(i), block.getOccurrence(i));
+            }
+            for (SimpleWitness witness : w) {
+                final int start = tokenIndex.getStartTokenPositionForWitness(witness);
+                assertEquals(occurrences.stream().filter(o -> o < start).count(), block.countOccurrencesBefore(start));
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testBlocksCreatedOutsideOfTheIndex() {
+        final SimpleWitness[] w = createWitnesses("a b a b c", "b a b", "c a b a");
+        final TokenIndex tokenIndex = new TokenIndex(new EqualityTokenComparator(), w);
+        tokenIndex.prepare();
+        for (Block block : tokenIndex.blocks) {
+            final Block created = new Block(tokenIndex, block.start, block.end, block.length);
+            assertEquals(block.getDepth(), created.getDepth());
+            assertEquals(block.getFrequency(), created.getFrequency());
+            for (int i = 0; i < block.getFrequency(); i++) {
+                assertEquals(block.getOccurrence(i), created.getOccurrence(i));
+            }
+            for (SimpleWitness witness : w) {
+                final int start = tokenIndex.getStartTokenPositionForWitness(witness);
+                assertEquals(block.countOccurrencesBefore(start), created.countOccurrencesBefore(start));
+            }
+            final List<Block.Instance> instances = block.getAllInstances();
+            assertEquals(block.getFrequency(), instances.size());
+            for (int slot = block.start; slot <= block.end; slot++) {
+                assertEquals(block.getStartToken(slot), instances.get(slot - block.start).start_token);
+            }
+        }
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.matching;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class EditDistanceTest {
+
+    @Test
+    public void distances() {
+        assertEquals(0, EditDistance.compute("", ""));
+        assertEquals(4, EditDistance.compute("", "near"));
+        assertEquals(1, EditDistance.compute("near", "nar"));
+        assertEquals(3, EditDistance.compute("kitten", "sitting"));
+        assertEquals(2, EditDistance.compute("kitten", "sitting", 1));
+        assertEquals(3, EditDistance.compute("a", "abcd", 2));
+    }
+
+    @Test
+    public void randomDistances() {
+        final Random random = new Random(42);
+        for (int run = 0; run < 500; run++) {
+            final String str1 = random(random, random.nextInt(200));
+            final String str2 = (random.nextBoolean() ? random(random, random.nextInt(200)) : mutate(random, str1));
+            final int distance = matrixDistance(str1, str2);
+            assertEquals(str1 + " / " + str2, distance, EditDistance.compute(str1, str2));
+            assertEquals(str1 + " / " + str2, distance, EditDistance.compute(str2, str1));
+
+            final int threshold = random.nextInt(10);
+            assertEquals(Math.min(distance, threshold + 1), EditDistance.compute(str1, str2, threshold));
+        }
+    }
+
+    private static String random(Random random, int length) {
+        final StringBuilder str = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            str.append((char) ('a' + random.nextInt(4)));
+        }
+        return str.toString();
+    }
+
+    private static String mutate(Random random, String str) {
+        final StringBuilder mutated = new StringBuilder(str);
+        for (int edits = random.nextInt(8); edits > 0 && mutated.length() > 0; edits--) {
+            final int position = random.nextInt(mutated.length());
+            switch (random.nextInt(3)) {
+                case 0:
+                    mutated.deleteCharAt(position);
+                    break;
+                case 1:
+                    mutated.insert(position, 'x');
+                    break;
+                default:
+                    mutated.setCharAt(position, 'y');
+            }
+        }
+        return mutated.toString();
+    }
+
+    private static int matrixDistance(String str1, String str2) {
+        final int[][] matrix = new int[str1.length() + 1][str2.length() + 1];
+        for (int i = 0; i <= str1.length(); i++) {
+            for (int j = 0; j <= str2.length(); j++) {
+                if (i == 0 || j == 0) {
+                    matrix[i][j] = i + j;
+                } else {
+                    final int cost = (str1.charAt(i - 1) == str2.charAt(j - 1) ? 0 : 1);
+                    matrix[i][j] = Math.min(Math.min(matrix[i - 1][j] + 1, matrix[i][j - 1] + 1), matrix[i - 1][j - 1] + cost);
+                }
+            }
+        }
+        return matrix[str1.length()][str2.length()];
+    }
+}
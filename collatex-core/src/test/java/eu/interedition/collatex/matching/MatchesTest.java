@@ -22,9 +22,13 @@ package eu.interedition.collatex.matching;
 import eu.interedition.collatex.AbstractTest;
 import eu.interedition.collatex.Token;
 import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.simple.SimpleToken;
 import eu.interedition.collatex.simple.SimpleWitness;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -70,6 +74,36 @@ public class MatchesTest extends AbstractTest {
         assertEquals(7, matches.allMatches.values().stream().flatMap(List::stream).count());
     }
 
+    @Test
+    public void ambiguousInBase() {
+        // a single "the" in the graph, matched by both tokens of the witness
+        final SimpleWitness[] w = createWitnesses("the cat", "the dog and the cat");
+        final VariantGraph graph = collate(w[0]);
+        final Matches matches = Matches.between(graph.vertices(), w[1].getTokens(), new EqualityTokenComparator());
+        assertMatches(matches, 2, 1, 2);
+
+        final List<Token> tokens = w[1].getTokens();
+        assertEquals(Arrays.asList(tokens.get(0), tokens.get(3)), new ArrayList<>(matches.ambiguousInWitness));
+        assertEquals(Arrays.asList(tokens.get(1), tokens.get(2)), new ArrayList<>(matches.unmatchedInWitness));
+        assertEquals(matches.allMatches.get(tokens.get(0)), matches.allMatches.get(tokens.get(3)));
+    }
+
+    @Test
+    public void nonTransitiveComparator() {
+        // tokens match if their lengths differ by at most one, so "bb" matches both "a" and "ccc"
+        final Comparator<Token> comparator = (a, b) -> {
+            final int difference = ((SimpleToken) a).getNormalized().trim().length() - ((SimpleToken) b).getNormalized().trim().length();
+            return (Math.abs(difference) <= 1 ? 0 : difference);
+        };
+        final SimpleWitness[] w = createWitnesses("a ccc", "bb dddd");
+        final VariantGraph graph = collate(w[0]);
+        final Matches matches = Matches.between(graph.vertices(), w[1].getTokens(), comparator);
+        assertMatches(matches, 0, 0, 2);
+
+        final List<Token> tokens = w[1].getTokens();
+        assertEquals(2, matches.allMatches.get(tokens.get(0)).size());
+        assertEquals(1, matches.allMatches.get(tokens.get(1)).size());
+    }
 
     private void assertMatches(final Matches matches, int expected_unmatched, int expected_unique, int expected_ambiguous) {
         Set<Token> unmatched = matches.unmatchedInWitness;
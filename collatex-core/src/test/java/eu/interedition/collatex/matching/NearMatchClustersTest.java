@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.matching;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NearMatchClustersTest {
+
+    @Test
+    public void frequentLeaders() {
+        final NearMatchClusters clusters = NearMatchClusters.of(Arrays.asList("nar", "near", "near", "far", "yeah"), 1);
+        assertEquals(3, clusters.size());
+        assertEquals("near", clusters.canonical("nar"));
+        assertEquals("near", clusters.canonical("near"));
+        assertEquals("far", clusters.canonical("far"));
+        assertEquals(-1, clusters.id("unknown"));
+    }
+
+    @Test
+    public void randomVocabulary() {
+        final Random random = new Random(42);
+        final List<String> strings = new ArrayList<>();
+        for (int sc = 0; sc < 2000; sc++) {
+            final StringBuilder str = new StringBuilder();
+            for (int cc = 0, length = 1 + random.nextInt(6); cc < length; cc++) {
+                str.append((char) ('a' + random.nextInt(5)));
+            }
+            strings.add(str.toString());
+        }
+        final NearMatchClusters clusters = NearMatchClusters.of(strings, 2);
+
+        final Set<String> leaders = new HashSet<>();
+        for (String str : strings) {
+            final String leader = clusters.canonical(str);
+            assertTrue(EditDistance.compute(str, leader) <= 2);
+            leaders.add(leader);
+        }
+        assertEquals(clusters.size(), leaders.size());
+        for (String leader : leaders) {
+            assertEquals(leader, clusters.canonical(leader));
+            for (String other : leaders) {
+                assertTrue(leader.equals(other) || EditDistance.compute(leader, other) > 2);
+            }
+        }
+
+        Collections.shuffle(strings, random);
+        final NearMatchClusters shuffled = NearMatchClusters.of(strings, 2);
+        for (String str : strings) {
+            assertEquals(clusters.canonical(str), shuffled.canonical(str));
+        }
+    }
+}
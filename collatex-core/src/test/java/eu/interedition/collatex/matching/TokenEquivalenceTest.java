@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.matching;
+
+import eu.interedition.collatex.AbstractTest;
+import eu.interedition.collatex.CollationAlgorithm;
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.simple.SimpleToken;
+import eu.interedition.collatex.simple.SimpleWitness;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class TokenEquivalenceTest extends AbstractTest {
+
+    @Test
+    public void equality() {
+        final SimpleWitness[] w = createWitnesses("a b a", "b c");
+        final TokenEquivalence equivalence = TokenEquivalence.of(new EqualityTokenComparator(), Arrays.asList(w));
+        assertEquals(3, equivalence.size());
+        assertEquals(Arrays.asList(0, 1, 0), ids(equivalence, w[0].getTokens()));
+        assertEquals(Arrays.asList(1, 2), ids(equivalence, w[1].getTokens()));
+    }
+
+    @Test
+    public void classifyOnDemand() {
+        final SimpleWitness[] w = createWitnesses("a b", "c b");
+        final TokenEquivalence equivalence = TokenEquivalence.of(new EqualityTokenComparator(), Arrays.asList(w[0]));
+        assertEquals(2, equivalence.size());
+        assertEquals(Arrays.asList(2, 1), ids(equivalence, w[1].getTokens()));
+        assertEquals(3, equivalence.size());
+    }
+
+    @Test
+    public void noClassesForOtherComparators() {
+        final Comparator<Token> comparator = (a, b) -> ((SimpleToken) a).getContent().trim().compareToIgnoreCase(((SimpleToken) b).getContent().trim());
+        final SimpleWitness[] w = createWitnesses("A b", "a B c");
+        assertNull(TokenEquivalence.of(comparator, Arrays.asList(w)));
+        assertNull(TokenEquivalence.of(new EditDistanceTokenComparator(), Arrays.asList(w)));
+        assertNull(TokenEquivalence.of(new EditDistanceTokenComparator() {
+        }, Arrays.asList(w)));
+    }
+
+    @Test
+    public void noClassesWithoutComparator() {
+        final List<TokenEquivalence> equivalences = new ArrayList<>();
+        final CollationAlgorithm algorithm = new CollationAlgorithm.Base() {
+            @Override
+            public void collate(VariantGraph against, Iterable<Token> witness) {
+                equivalences.add(equivalence(witness));
+                merge(against, witness, Collections.emptyMap());
+            }
+        };
+        final SimpleWitness[] w = createWitnesses("a b", "a c");
+        algorithm.collate(new VariantGraph(), w[0]);
+        algorithm.collate(new VariantGraph(), Arrays.asList(w));
+        assertEquals(Arrays.asList(null, null, null), equivalences);
+    }
+
+    @Test
+    public void nearMatchKeys() {
+        final SimpleWitness[] w = createWitnesses("near matching yeah", "nar matchin yeah");
+        final List<Token> tokens = new ArrayList<>(w[0].getTokens());
+        tokens.addAll(w[1].getTokens());
+        final Function<Token, String> key = TokenEquivalence.key(new EditDistanceTokenComparator(), tokens);
+        for (int tc = 0; tc < 3; tc++) {
+            assertEquals(key.apply(w[0].getTokens().get(tc)), key.apply(w[1].getTokens().get(tc)));
+        }
+        assertNotEquals(key.apply(w[0].getTokens().get(0)), key.apply(w[0].getTokens().get(2)));
+    }
+
+    private static List<Integer> ids(TokenEquivalence equivalence, List<Token> tokens) {
+        return Arrays.asList(tokens.stream().map(equivalence::id).toArray(Integer[]::new));
+    }
+}
@@ -21,11 +21,24 @@ package eu.interedition.collatex.medite;
 
 import eu.interedition.collatex.AbstractTest;
 import eu.interedition.collatex.CollationAlgorithmFactory;
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.VariantGraph;
 import eu.interedition.collatex.matching.EqualityTokenComparator;
 import eu.interedition.collatex.simple.SimpleToken;
+import eu.interedition.collatex.simple.SimpleWitness;
 import eu.interedition.collatex.util.VariantGraphRanking;
+import eu.interedition.collatex.util.VertexMatch;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
 /**
  * @author <a href="http://gregor.middell.net/">Gregor Middell</a>
  */
@@ -48,4 +61,67 @@ public class MediteTest extends AbstractTest {
             "This Carpenter hadde wedded a wyf"
         )).asTable()));
     }
+
+    @Test
+    public void phrases() {
+        final SimpleWitness[] witnesses = createWitnesses("a a b a a a b c", "a a a b a a b c a");
+        final VariantGraph graph = collate(witnesses[0]);
+        final Token[] tokens = witnesses[1].getTokens().toArray(new Token[0]);
+
+        final Matches matches = Matches.between(
+            VariantGraphRanking.of(graph).asArray(),
+            SuffixTree.build(new EqualityTokenComparator(), tokens),
+            new MediteAlgorithm.MatchEvaluatorWrapper(SimpleToken.TOKEN_MATCH_EVALUATOR, tokens)
+        );
+        for (SortedSet<VertexMatch.WithTokenIndex> phrase : matches) {
+            final SortedSet<VertexMatch.WithTokenIndex> copy = new TreeSet<>(phrase);
+            assertEquals(copy, phrase);
+            assertEquals(phrase, copy);
+            assertEquals(copy.hashCode(), phrase.hashCode());
+            assertEquals(copy.first().token, phrase.first().token);
+            assertEquals(copy.last().token, phrase.last().token);
+
+            int token = phrase.first().token;
+            for (VertexMatch.WithTokenIndex match : phrase) {
+                assertEquals(token++, match.token);
+                assertEquals(((SimpleToken) tokens[match.token]).getNormalized(), ((SimpleToken) match.vertex.tokens().iterator().next()).getNormalized());
+            }
+        }
+    }
+
+    @Test
+    public void heuristicCosts() {
+        final int[] values = {2, 2, 1};
+
+        // ordered by vertex rank: only tokens are compared
+        assertArrayEquals(new int[]{2, 0, 0}, AlignmentDecisionGraph.heuristicCosts(Arrays.asList(
+            match(0, 5, 2), match(2, 0, 2), match(4, 7, 1)
+        ), values));
+
+        // overlapping vertex ranks: matches are compared directly
+        assertArrayEquals(new int[]{2, 0, 0}, AlignmentDecisionGraph.heuristicCosts(Arrays.asList(
+            match(0, 0, 4), match(2, 5, 1), match(5, 6, 1)
+        ), values));
+    }
+
+    @Test
+    public void zeroValuedMatches() {
+        // matches of tokens without content are worth nothing, so their decisions tie
+        final List<SortedSet<VertexMatch.WithTokenIndex>> matches = Arrays.asList(match(0, 2, 1), match(1, 0, 1), match(2, 1, 1));
+        final int[] values = {1, 0, 0};
+        final SortedSet<SortedSet<VertexMatch.WithTokenIndex>> matchSet = new TreeSet<>(VertexMatch.<VertexMatch.WithTokenIndex>setComparator());
+        matchSet.addAll(matches);
+        assertEquals(
+            Arrays.asList(matches.get(0), matches.get(1)),
+            new ArrayList<>(AlignmentDecisionGraph.filter(matchSet, match -> values[matches.indexOf(match)]))
+        );
+    }
+
+    private static SortedSet<VertexMatch.WithTokenIndex> match(int vertexRank, int token, int length) {
+        final SortedSet<VertexMatch.WithTokenIndex> match = new TreeSet<>();
+        for (int i = 0; i < length; i++) {
+            match.add(new VertexMatch.WithTokenIndex(null, vertexRank + i, token + i));
+        }
+        return match;
+    }
 }
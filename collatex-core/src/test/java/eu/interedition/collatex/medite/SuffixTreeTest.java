@@ -22,11 +22,18 @@ package eu.interedition.collatex.medite;
 import eu.interedition.collatex.AbstractTest;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
 /**
  * @author <a href="http://gregor.middell.net/">Gregor Middell</a>
  */
@@ -45,4 +52,49 @@ public class SuffixTreeTest extends AbstractTest {
         LOG.fine(() -> StreamSupport.stream(st.match(Arrays.asList("s", "p", "o", "a")).spliterator(), false).map(Object::toString).collect(Collectors.joining(", ")));
     }
 
+    @Test
+    public void matchedClasses() {
+        final SuffixTree<String> st = SuffixTree.build(String.CASE_INSENSITIVE_ORDER, "S", "P", "O", "a", "s", "p", "o");
+
+        final List<int[]> classes = new ArrayList<>();
+        st.match(Arrays.asList("s", "p", "o", "A", "x")).forEach(ec -> classes.add(ec.members()));
+        assertEquals(4, classes.size());
+        assertArrayEquals(new int[]{0, 4}, classes.get(0));
+        assertArrayEquals(new int[]{1, 5}, classes.get(1));
+        assertArrayEquals(new int[]{2, 6}, classes.get(2));
+        assertArrayEquals(new int[]{3}, classes.get(3));
+
+        assertNull(st.cursor().move("x"));
+        assertNull(st.cursor().move("a").move("o"));
+    }
+
+    @Test
+    public void matchedClassesOfRandomSequence() {
+        final Random random = new Random(42);
+        final Integer[] source = new Integer[500];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = random.nextInt(4);
+        }
+        final SuffixTree<Integer> st = SuffixTree.build(Comparator.naturalOrder(), source);
+
+        for (int start = 0; start < source.length; start++) {
+            SuffixTree<Integer>.Cursor cursor = st.cursor();
+            for (int end = start; end < Math.min(source.length, start + 12); end++) {
+                cursor = cursor.move(source[end]);
+                final SuffixTree<Integer>.EquivalenceClass matchedClass = cursor.matchedClass();
+                assertArrayEquals(occurrenceEnds(source, start, end), matchedClass.members());
+            }
+        }
+    }
+
+    private static int[] occurrenceEnds(Integer[] source, int start, int end) {
+        final int length = end - start + 1;
+        final List<Integer> ends = new ArrayList<>();
+        for (int i = 0; i + length <= source.length; i++) {
+            if (Arrays.asList(source).subList(i, i + length).equals(Arrays.asList(source).subList(start, end + 1))) {
+                ends.add(i + length - 1);
+            }
+        }
+        return ends.stream().mapToInt(Integer::intValue).toArray();
+    }
 }
@@ -21,9 +21,22 @@ package eu.interedition.collatex.needlemanwunsch;
 
 import eu.interedition.collatex.AbstractTest;
 import eu.interedition.collatex.CollationAlgorithmFactory;
+import eu.interedition.collatex.Token;
+import eu.interedition.collatex.VariantGraph;
 import eu.interedition.collatex.matching.EqualityTokenComparator;
+import eu.interedition.collatex.simple.SimpleToken;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
 /**
  * @author <a href="http://gregor.middell.net/">Gregor Middell</a>
  */
@@ -34,4 +47,127 @@ public class NeedlemanWunschTest extends AbstractTest {
         setCollationAlgorithm(CollationAlgorithmFactory.needlemanWunsch(new EqualityTokenComparator()));
         LOG.fine(toString(table(collate("a b a b a", "a b a"))));
     }
+
+    @Test
+    public void collations() {
+        setCollationAlgorithm(CollationAlgorithmFactory.needlemanWunsch(new EqualityTokenComparator()));
+        assertEquals("A: |a|b|c|d|\nB: |a| |c|d|\n", toString(table(collate("a b c d", "a c d"))));
+        assertEquals("A: |the| |cat|sat|\nB: |the|black|cat|sat|\n", toString(table(collate("the cat sat", "the black cat sat"))));
+        assertEquals("A: |a|b|a|b|a|\nB: | | |a|b|a|\n", toString(table(collate("a b a b a", "a b a"))));
+
+        // the borders of the full matrix are scored as they always have been, see Mode.FULL
+        assertEquals("A: |a|b|c|\nB: |c| | |\n", toString(table(collate("a b c", "c"))));
+        assertEquals("A: |x|a|\nB: |a| |\n", toString(table(collate("x a", "a"))));
+    }
+
+    @Test
+    public void alignments() {
+        assertAlignment(new int[] { 0, 2, 3 }, new int[] { 0, 2, 3 }, ranks(new int[] { 0 }, new int[] { 1 }, new int[] { 2 }, new int[] { 3 }), 0, 2, 3);
+        assertAlignment(new int[] { -1 }, new int[] { 2 }, ranks(new int[] { 0 }, new int[] { 1 }, new int[] { 2 }), 2);
+        assertAlignment(new int[] { 0, 2 }, new int[] { 0, 2 }, ranks(new int[] { 0, 1 }, new int[] { 2 }, new int[] { 0 }), 0, 0);
+        assertAlignment(new int[] { 0, -1, 1 }, new int[] { 0, -1, 1 }, ranks(new int[] { 0 }, new int[] { 1 }), 0, 2, 1);
+        assertAlignment(new int[] { -1, -1, -1 }, new int[] { -1, -1, 0 }, ranks(new int[] { 1 }), 0, 0, 1);
+    }
+
+    @Test
+    public void nonTransitiveComparator() {
+        // tokens match if their lengths differ by at most one, so "bb" matches both "a" and "ccc"
+        final Comparator<Token> comparator = (a, b) -> {
+            final int difference = ((SimpleToken) a).getNormalized().trim().length() - ((SimpleToken) b).getNormalized().trim().length();
+            return (Math.abs(difference) <= 1 ? 0 : difference);
+        };
+        for (NeedlemanWunschAlgorithm.Mode mode : NeedlemanWunschAlgorithm.Mode.values()) {
+            setCollationAlgorithm(CollationAlgorithmFactory.needlemanWunsch(comparator, mode));
+            final VariantGraph graph = collate("a ccc", "bb dddd");
+            assertEquals(mode.toString(), 4, StreamSupport.stream(graph.vertices().spliterator(), false).count());
+        }
+    }
+
+    @Test
+    public void alignmentOfTokensAndAlignmentOfRanks() {
+        final Random random = new Random(42);
+        for (int run = 0; run < 50; run++) {
+            final int[][] ranks = new int[1 + random.nextInt(40)][];
+            for (int rc = 0; rc < ranks.length; rc++) {
+                ranks[rc] = random.ints(random.nextInt(3), 0, 4).sorted().distinct().toArray();
+            }
+            final Integer[] rankIndices = IntStream.range(0, ranks.length).boxed().toArray(Integer[]::new);
+            final int[] tokens = random.ints(random.nextInt(40), 0, 4).toArray();
+            final Integer[] tokenIndices = IntStream.range(0, tokens.length).boxed().toArray(Integer[]::new);
+
+            final Map<Integer, Integer> alignments = NeedlemanWunschAlgorithm.align(rankIndices, tokenIndices, new NeedlemanWunschScorer<Integer, Integer>() {
+                @Override
+                public float score(Integer rank, Integer token) {
+                    return (Arrays.binarySearch(ranks[rank], tokens[token]) >= 0 ? RankAlignment.MATCH : RankAlignment.MISMATCH);
+                }
+
+                @Override
+                public float gap() {
+                    return RankAlignment.GAP;
+                }
+            });
+            final int[] expected = new int[tokens.length];
+            Arrays.fill(expected, -1);
+            alignments.forEach((rank, token) -> expected[token] = rank);
+            assertArrayEquals(expected, new RankAlignment(ranks, tokens, 4).full());
+        }
+    }
+
+    private static int[][] ranks(int[]... ranks) {
+        return ranks;
+    }
+
+    private static void assertAlignment(int[] full, int[] optimal, int[][] ranks, int... tokens) {
+        assertArrayEquals(full, new RankAlignment(ranks, tokens, 4).full());
+        assertArrayEquals(optimal, new RankAlignment(ranks, tokens, 4).linearSpace());
+        assertArrayEquals(optimal, new RankAlignment(ranks, tokens, 4).banded());
+    }
+
+    @Test
+    public void optimalScoresOfModes() {
+        final Random random = new Random(42);
+        for (int run = 0; run < 50; run++) {
+            final int[][] ranks = new int[1 + random.nextInt(120)][];
+            for (int rc = 0; rc < ranks.length; rc++) {
+                ranks[rc] = random.ints(random.nextInt(3), 0, 4).sorted().distinct().toArray();
+            }
+            final int[] tokens = random.ints(random.nextInt(120), 0, 4).toArray();
+
+            final int score = optimalScore(ranks, tokens);
+            assertEquals(score, score(ranks, tokens, new RankAlignment(ranks, tokens, 4).linearSpace()));
+            assertEquals(score, score(ranks, tokens, new RankAlignment(ranks, tokens, 4).banded()));
+        }
+    }
+
+    private static int optimalScore(int[][] ranks, int[] tokens) {
+        final int[][] matrix = new int[ranks.length + 1][tokens.length + 1];
+        for (int rc = 0; rc <= ranks.length; rc++) {
+            for (int tc = 0; tc <= tokens.length; tc++) {
+                if (rc == 0 || tc == 0) {
+                    matrix[rc][tc] = (rc + tc) * RankAlignment.GAP;
+                    continue;
+                }
+                final int score = (Arrays.binarySearch(ranks[rc - 1], tokens[tc - 1]) >= 0 ? RankAlignment.MATCH : RankAlignment.MISMATCH);
+                matrix[rc][tc] = Math.max(matrix[rc - 1][tc - 1] + score, Math.max(matrix[rc - 1][tc], matrix[rc][tc - 1]) + RankAlignment.GAP);
+            }
+        }
+        return matrix[ranks.length][tokens.length];
+    }
+
+    private static int score(int[][] ranks, int[] tokens, int[] alignment) {
+        int score = 0;
+        int aligned = 0;
+        int lastRank = -1;
+        for (int tc = 0; tc < tokens.length; tc++) {
+            final int rank = alignment[tc];
+            if (rank < 0) {
+                continue;
+            }
+            assertEquals(true, rank > lastRank);
+            lastRank = rank;
+            aligned++;
+            score += (Arrays.binarySearch(ranks[rank], tokens[tc]) >= 0 ? RankAlignment.MATCH : RankAlignment.MISMATCH);
+        }
+        return score + (ranks.length - aligned + tokens.length - aligned) * RankAlignment.GAP;
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2015 The Interedition Development Group.
+ *
+ * This file is part of CollateX.
+ *
+ * CollateX is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CollateX is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with CollateX.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package eu.interedition.collatex.util;
+
+import eu.interedition.collatex.AbstractTest;
+import eu.interedition.collatex.CollationAlgorithm;
+import eu.interedition.collatex.CollationAlgorithmFactory;
+import eu.interedition.collatex.VariantGraph;
+import eu.interedition.collatex.Witness;
+import eu.interedition.collatex.matching.EqualityTokenComparator;
+import eu.interedition.collatex.simple.SimpleToken;
+import eu.interedition.collatex.simple.SimpleWitness;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompactVariantGraphStorageTest extends AbstractTest {
+
+    private static final String[] TEXTS = {
+        "the nice black and white cat shared his food",
+        "the friendly white and black cat spilled his food again",
+        "a cat the black cat shared his food",
+        "his food the cat shared"
+    };
+
+    @Test
+    public void dekker() {
+        assertSameAlignment(() -> collationAlgorithm, createWitnesses(TEXTS));
+    }
+
+    @Test
+    public void dekkerJoined() {
+        final SimpleWitness[] witnesses = createWitnesses(TEXTS);
+        assertEquals(toString(table(join(new VariantGraph(), witnesses))), toString(table(join(new VariantGraph(new CompactVariantGraphStorage()), witnesses))));
+    }
+
+    @Test
+    public void needlemanWunsch() {
+        assertSameAlignment(() -> CollationAlgorithmFactory.needlemanWunsch(new EqualityTokenComparator()), createWitnesses(TEXTS));
+    }
+
+    @Test
+    public void medite() {
+        assertSameAlignment(() -> CollationAlgorithmFactory.medite(new EqualityTokenComparator(), SimpleToken.TOKEN_MATCH_EVALUATOR), createWitnesses(TEXTS));
+    }
+
+    @Test
+    public void greedyStringTiling() {
+        assertSameAlignment(() -> CollationAlgorithmFactory.greedyStringTiling(new EqualityTokenComparator(), 2), createWitnesses(TEXTS));
+    }
+
+    @Test
+    public void moreWitnessesThanBitsPerWord() {
+        final SimpleWitness[] witnesses = new SimpleWitness[130];
+        for (int wc = 0; wc < witnesses.length; wc++) {
+            witnesses[wc] = new SimpleWitness(String.format("W%03d", wc), TEXTS[wc % TEXTS.length]);
+        }
+        final VariantGraph graph = assertSameAlignment(() -> collationAlgorithm, witnesses);
+        assertEquals(new HashSet<Witness>(Arrays.asList(witnesses)), graph.witnesses());
+    }
+
+    @Test
+    public void edges() {
+        final SimpleWitness[] w = createWitnesses("a b", "a c");
+        final VariantGraph graph = new VariantGraph(new CompactVariantGraphStorage());
+        final VariantGraph.Vertex a = graph.add(w[0].getTokens().get(0));
+        final VariantGraph.Vertex b = graph.add(w[0].getTokens().get(1));
+
+        graph.connect(graph.getStart(), a, new HashSet<>(Arrays.asList(w[0])));
+        graph.connect(graph.getStart(), a, new HashSet<>(Arrays.asList(w[1])));
+        graph.connect(a, b, new HashSet<>(Arrays.asList(w[0])));
+        graph.connect(b, graph.getEnd(), new HashSet<>(Arrays.asList(w[0])));
+
+        assertEquals(0, graph.getStart().incoming().size());
+        assertEquals(1, graph.getStart().outgoing().size());
+        assertEquals(1, graph.getEnd().incoming().size());
+        assertHasWitnesses(edgeBetween(graph.getStart(), a), w[0], w[1]);
+        assertHasWitnesses(a.witnesses(), w[0], w[1]);
+        assertHasWitnesses(edgeBetween(a, b), w[0]);
+        assertEquals(null, b.outgoing().get(a));
+        assertEquals(1, b.tokens().size());
+    }
+
+    @Test
+    public void edgeOrderAfterRemoval() {
+        final SimpleWitness[] w = createWitnesses("a b c d");
+        final Set<Witness> witnesses = Collections.singleton(w[0]);
+        final CompactVariantGraphStorage storage = new CompactVariantGraphStorage();
+        final VariantGraph graph = new VariantGraph(storage);
+        final VariantGraph.Vertex[] v = w[0].getTokens().stream().map(graph::add).toArray(VariantGraph.Vertex[]::new);
+
+        graph.connect(graph.getStart(), v[0], witnesses);
+        graph.connect(graph.getStart(), v[1], witnesses);
+        graph.connect(graph.getStart(), v[2], witnesses);
+        storage.disconnect(graph.getStart(), v[2]);
+        graph.connect(graph.getStart(), v[3], witnesses);
+        assertEquals(Arrays.asList(v[0], v[1], v[3]), new ArrayList<>(graph.getStart().outgoing().keySet()));
+
+        storage.disconnect(graph.getStart(), v[0]);
+        storage.disconnect(graph.getStart(), v[1]);
+        storage.disconnect(graph.getStart(), v[3]);
+        graph.connect(graph.getStart(), v[2], witnesses);
+        graph.connect(graph.getStart(), v[0], witnesses);
+        assertEquals(Arrays.asList(v[2], v[0]), new ArrayList<>(graph.getStart().outgoing().keySet()));
+        assertEquals(Collections.singletonList(graph.getStart()), new ArrayList<>(v[0].incoming().keySet()));
+    }
+
+    private VariantGraph assertSameAlignment(Supplier<CollationAlgorithm> algorithm, SimpleWitness... witnesses) {
+        final VariantGraph expected = new VariantGraph();
+        algorithm.get().collate(expected, witnesses);
+
+        final VariantGraph actual = new VariantGraph(new CompactVariantGraphStorage());
+        algorithm.get().collate(actual, witnesses);
+
+        assertEquals(toString(table(expected)), toString(table(actual)));
+        assertEquals(expected.witnesses(), actual.witnesses());
+        return actual;
+    }
+
+    private VariantGraph join(VariantGraph graph, SimpleWitness... witnesses) {
+        collate(graph, witnesses);
+        return VariantGraph.JOIN.apply(graph);
+    }
+}